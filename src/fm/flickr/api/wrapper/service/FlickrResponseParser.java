@@ -0,0 +1,304 @@
+package fm.flickr.api.wrapper.service;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+
+import fm.flickr.api.wrapper.service.param.GroupItem;
+import fm.flickr.api.wrapper.service.param.PhotoItem;
+import fm.flickr.api.wrapper.service.param.PhotoItemsSet;
+import fm.flickr.api.wrapper.service.param.TagItem;
+import fm.flickr.api.wrapper.util.RateLimiter;
+import fm.flickr.api.wrapper.util.ResponseDiagnostics;
+import fm.flickr.api.wrapper.util.ServiceException;
+
+/**
+ * Streaming parser of the Flickr responses: elements are read with a StAX pull-parser and bound directly into
+ * PhotoItem, GroupItem and TagItem instances, without building a DOM of the whole response. This is used for
+ * responses that may be large, typically pages of up to 500 photos.
+ *
+ * Like {@link FlickrUtil#launchRequest(String)}, each method first checks the Flickr status of the response.
+ *
+ * @author fmichel
+ */
+public class FlickrResponseParser
+{
+	private static Logger logger = Logger.getLogger(FlickrResponseParser.class.getName());
+
+	private static enum ImageType {
+		SQUARE, THUMBNAIL, MEDIUM, BIG
+	};
+
+	/** Factory shared by all threads: it is thread-safe once configured */
+	private static final XMLInputFactory factory = makeFactory();
+
+	private static XMLInputFactory makeFactory() {
+		XMLInputFactory f = XMLInputFactory.newInstance();
+		f.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		f.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+		return f;
+	}
+
+	/**
+	 * Parse a response containing a list of photos, such as:
+	 *
+	 * <pre>
+	 * &lt;photos page=&quot;1&quot; pages=&quot;10&quot; total=&quot;5000&quot; ...&gt;
+	 *   &lt;photo id=&quot;...&quot; owner=&quot;...&quot; secret=&quot;...&quot; server=&quot;...&quot; farm=&quot;...&quot; title=&quot;...&quot; dateadded=&quot;...&quot; /&gt;
+	 * &lt;/photos&gt;
+	 * </pre>
+	 *
+	 * @param body response body
+	 * @return list of photos in the order of the response, with the page number, max page and total. The rank of each photo is its
+	 *         1-based position in the page.
+	 * @throws ServiceException if Flickr returned an error or the response is not valid
+	 */
+	public static PhotoItemsSet parsePhotos(byte[] body) throws ServiceException {
+		XMLStreamReader reader = openResponse(body);
+		try {
+			ArrayList<PhotoItem> items = new ArrayList<PhotoItem>();
+			int pageNumber = -1;
+			int maxPages = -1;
+			int total = -1;
+
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if ("photos".equals(name)) {
+						pageNumber = Integer.valueOf(getAttribute(reader, "page"));
+						maxPages = Integer.valueOf(getAttribute(reader, "pages"));
+						if (!getAttribute(reader, "total").isEmpty())
+							total = Integer.valueOf(getAttribute(reader, "total"));
+					} else if ("photo".equals(name))
+						items.add(makePhotoItem(reader, items.size()));
+				}
+			}
+			PhotoItemsSet photos = new PhotoItemsSet(items, pageNumber, maxPages);
+			photos.setTotal(total);
+			return photos;
+
+		} catch (XMLStreamException e) {
+			logger.error("Error while parsing response", e);
+			ResponseDiagnostics.dump("Invalid XML response");
+			throw new ServiceException("Invalid XML response");
+		} catch (NumberFormatException e) {
+			logger.error("Invalid page numbers in response", e);
+			ResponseDiagnostics.dump("Invalid page numbers in response");
+			throw new ServiceException("Invalid XML response");
+		} finally {
+			close(reader);
+		}
+	}
+
+	/**
+	 * Parse a response containing a list of groups. Depending on the service, groups are described by elements
+	 * &lt;pool id=&quot;...&quot; title=&quot;...&quot; /&gt; (flickr.photos.getAllContexts) or &lt;group id=&quot;...&quot;
+	 * name=&quot;...&quot; /&gt; (flickr.groups.pools.getGroups).
+	 *
+	 * @param body response body
+	 * @param elementName name of the elements that describe a group
+	 * @param nameAttribute name of the attribute that gives the group name
+	 * @return list of groups, possibly empty
+	 * @throws ServiceException if Flickr returned an error or the response is not valid
+	 */
+	public static ArrayList<GroupItem> parseGroups(byte[] body, String elementName, String nameAttribute) throws ServiceException {
+		XMLStreamReader reader = openResponse(body);
+		try {
+			ArrayList<GroupItem> items = new ArrayList<GroupItem>();
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && elementName.equals(reader.getLocalName())) {
+					GroupItem item = new GroupItem();
+					item.setGroupId(getAttribute(reader, "id"));
+					item.setGroupName(getAttribute(reader, nameAttribute));
+					items.add(item);
+				}
+			}
+			return items;
+
+		} catch (XMLStreamException e) {
+			logger.error("Error while parsing response", e);
+			ResponseDiagnostics.dump("Invalid XML response");
+			throw new ServiceException("Invalid XML response");
+		} finally {
+			close(reader);
+		}
+	}
+
+	/**
+	 * Parse a response containing a list of tags: &lt;tag raw=&quot;...&quot;&gt;tag&lt;/tag&gt;
+	 *
+	 * @param body response body
+	 * @return list of tags, possibly empty
+	 * @throws ServiceException if Flickr returned an error or the response is not valid
+	 */
+	public static ArrayList<TagItem> parseTags(byte[] body) throws ServiceException {
+		XMLStreamReader reader = openResponse(body);
+		try {
+			ArrayList<TagItem> items = new ArrayList<TagItem>();
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && "tag".equals(reader.getLocalName())) {
+					TagItem item = new TagItem();
+					item.setRaw(getAttribute(reader, "raw"));
+					item.setTagId(reader.getElementText());
+					items.add(item);
+				}
+			}
+			return items;
+
+		} catch (XMLStreamException e) {
+			logger.error("Error while parsing response", e);
+			ResponseDiagnostics.dump("Invalid XML response");
+			throw new ServiceException("Invalid XML response");
+		} finally {
+			close(reader);
+		}
+	}
+
+	/**
+	 * Read the value of an attribute of the first element with a given name, and ignore the rest of the response
+	 *
+	 * @param body response body
+	 * @param elementName name of the element
+	 * @param attribute name of the attribute
+	 * @return value of the attribute, empty string if the element has no such attribute, null if there is no such element
+	 * @throws ServiceException if Flickr returned an error or the response is not valid
+	 */
+	public static String parseAttribute(byte[] body, String elementName, String attribute) throws ServiceException {
+		XMLStreamReader reader = openResponse(body);
+		try {
+			// The rsp element may be the one looked for
+			if (elementName.equals(reader.getLocalName()))
+				return getAttribute(reader, attribute);
+
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT && elementName.equals(reader.getLocalName()))
+					return getAttribute(reader, attribute);
+			}
+			return null;
+
+		} catch (XMLStreamException e) {
+			logger.error("Error while parsing response", e);
+			ResponseDiagnostics.dump("Invalid XML response");
+			throw new ServiceException("Invalid XML response");
+		} finally {
+			close(reader);
+		}
+	}
+
+	/**
+	 * Create a reader on the response, positioned on the &lt;rsp&gt; root element, and check the Flickr status of the
+	 * response (see {@link FlickrUtil#checkFlickrResponseStatus(org.w3c.dom.Document)}).
+	 *
+	 * @param body response body
+	 * @return the reader positioned on the &lt;rsp&gt; element
+	 * @throws ServiceException if Flickr returned an error or the response is not valid
+	 */
+	private static XMLStreamReader openResponse(byte[] body) throws ServiceException {
+		XMLStreamReader reader = null;
+		try {
+			reader = factory.createXMLStreamReader(new ByteArrayInputStream(body));
+			while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT)
+				;
+			if (!reader.isStartElement() || !"rsp".equals(reader.getLocalName())) {
+				logger.error("No rsp element in response");
+				ResponseDiagnostics.dump("No rsp element in response");
+				throw new ServiceException("Invalid XML response");
+			}
+
+			if (!"ok".equalsIgnoreCase(getAttribute(reader, "stat"))) {
+				String error = "Code: , Cause: ";
+				while (reader.hasNext()) {
+					if (reader.next() == XMLStreamConstants.START_ELEMENT && "err".equals(reader.getLocalName())) {
+						error = "Code: " + getAttribute(reader, "code") + ", Cause: " + getAttribute(reader, "msg");
+						RateLimiter.flickrError(getAttribute(reader, "code"));
+						break;
+					}
+				}
+				logger.warn("Flickr returned an error: " + error);
+				ResponseDiagnostics.dump("Flickr returned an error: " + error);
+				throw new ServiceException("Flickr returned an error: " + error);
+			}
+			return reader;
+
+		} catch (XMLStreamException e) {
+			logger.error("Error while parsing response", e);
+			ResponseDiagnostics.dump("Invalid XML response");
+			close(reader);
+			throw new ServiceException("Invalid XML response");
+		} catch (ServiceException e) {
+			close(reader);
+			throw e;
+		}
+	}
+
+	/**
+	 * Build a PhotoItem from the attributes of the current &lt;photo&gt; element
+	 *
+	 * @param reader reader positioned on a &lt;photo&gt; element
+	 * @param index 0-based position of the photo in the response
+	 */
+	private static PhotoItem makePhotoItem(XMLStreamReader reader, int index) {
+		String id = getAttribute(reader, "id");
+		String farmId = getAttribute(reader, "farm");
+		String serverId = getAttribute(reader, "server");
+		String secret = getAttribute(reader, "secret");
+
+		PhotoItem photoItem = new PhotoItem();
+		photoItem.setPhotoId(id);
+		photoItem.setInterestingnessRank(index + 1);
+		photoItem.setSquareUrl(getPhotoUrl(farmId, serverId, id, secret, ImageType.SQUARE));
+		photoItem.setMediumUrl(getPhotoUrl(farmId, serverId, id, secret, ImageType.MEDIUM));
+		photoItem.setBigUrl(getPhotoUrl(farmId, serverId, id, secret, ImageType.BIG));
+		photoItem.setTitle(getAttribute(reader, "title"));
+		photoItem.setUserId(getAttribute(reader, "owner"));
+		photoItem.setDateAdded(getAttribute(reader, "dateadded"));
+		return photoItem;
+	}
+
+	/**
+	 * Build the URL of an image
+	 *
+	 * @param type
+	 *            the type of the image to return a url for: squ@are (75x75), thumbnail, or medium
+	 * @return formatted url according to the scheme:
+	 *         <code>http://farm{farm-id}.static.flickr.com/{server-id}/id_{secret}....jpg</code>
+	 */
+	private static String getPhotoUrl(String farmId, String serverId, String id, String secret, ImageType type) {
+		String url = "http://farm" + farmId + ".static.flickr.com/" + serverId + "/" + id + "_" + secret;
+		switch (type) {
+		case SQUARE:
+			return url + "_s.jpg";
+		case THUMBNAIL:
+			return url + "_t.jpg";
+		case BIG:
+			return url + "_b.jpg";
+		case MEDIUM:
+		default:
+			return url + ".jpg";
+		}
+	}
+
+	/**
+	 * Value of an attribute of the current element, or an empty string if there is no such attribute, like
+	 * org.w3c.dom.Element.getAttribute()
+	 */
+	private static String getAttribute(XMLStreamReader reader, String name) {
+		String value = reader.getAttributeValue(null, name);
+		return (value == null) ? "" : value;
+	}
+
+	private static void close(XMLStreamReader reader) {
+		if (reader != null)
+			try {
+				reader.close();
+			} catch (XMLStreamException e) {
+				logger.warn("Error while closing XML reader: " + e.toString());
+			}
+	}
+}
@@ -40,12 +40,9 @@ public class FlickrService {
 
 	private static Configuration config = Config.getConfiguration();
 
-	private static enum ImageType {
-		SQUARE, THUMBNAIL, MEDIUM, BIG
-	};
-
 	private final static String FLICKR_AUTH_URL = "https://flickr.com/services/auth/?";
-	private final static String FLICKR_SERVICES_URL = "https://api.flickr.com/services/rest/?";
+	/** Url of the Flickr services, may be overridden to send requests to a stub server */
+	private final static String FLICKR_SERVICES_URL = config.getString("fm.flickr.api.wrapper.services_url", "https://api.flickr.com/services/rest/?");
 	private final static int MAX_PHOTOS_PER_PAGE = 500;
 
 	public FlickrService() {
@@ -218,16 +215,7 @@ public class FlickrService {
 				String urlStr = FLICKR_SERVICES_URL + FlickrUtil.formatUrlParams(listParams);
 
 				// Call the service and parse the XML response
-				Document xmlResp = FlickrUtil.launchRequest(urlStr);
-
-				// Get the page number and max page
-				Element photos = (Element) xmlResp.getElementsByTagName("photos").item(0);
-				int maxPages = Integer.valueOf(photos.getAttribute("pages"));
-				int pageNumber = Integer.valueOf(photos.getAttribute("page"));
-
-				// Get the list of photo nodes from the response
-				NodeList photosList = xmlResp.getElementsByTagName("photo");
-				return new PhotoItemsSet(makePhotoListFromNodesList(photosList), pageNumber, maxPages);
+				return FlickrResponseParser.parsePhotos(FlickrUtil.launchRawRequest(urlStr));
 
 			} catch (ServiceException e) {
 				logger.error("Error while requesting Flickr service", e);
@@ -273,16 +261,7 @@ public class FlickrService {
 			String urlStr = FLICKR_SERVICES_URL + FlickrUtil.formatUrlParams(listParams);
 
 			// Call the service and parse the XML response
-			Document xmlResp = FlickrUtil.launchRequest(urlStr);
-
-			// Get the page number and max page
-			Element photos = (Element) xmlResp.getElementsByTagName("photos").item(0);
-			int maxPages = Integer.valueOf(photos.getAttribute("pages"));
-			int pageNumber = Integer.valueOf(photos.getAttribute("page"));
-
-			// Get the list of photo nodes from the response
-			NodeList photosList = xmlResp.getElementsByTagName("photo");
-			return new PhotoItemsSet(makePhotoListFromNodesList(photosList), pageNumber, maxPages);
+			return FlickrResponseParser.parsePhotos(FlickrUtil.launchRawRequest(urlStr));
 
 		} catch (ServiceException e) {
 			logger.error("Error while requesting Flickr service", e);
@@ -342,18 +321,17 @@ public class FlickrService {
 				// Build the query url, call the service and parse the XML response
 				listParams.put("page", Integer.toString(iPage));
 				String urlStr = FLICKR_SERVICES_URL + FlickrUtil.formatUrlParams(listParams);
-				Document xmlResp = FlickrUtil.launchRequest(urlStr);
+				PhotoItemsSet photos = FlickrResponseParser.parsePhotos(FlickrUtil.launchRawRequest(urlStr));
 
 				// Get the total number of pages
-				Element photos = (Element) xmlResp.getElementsByTagName("photos").item(0);
-				maxPages = Integer.valueOf(photos.getAttribute("pages"));
+				maxPages = photos.getMaxPage();
 
-				// Get the list of photo nodes from the response, and pick up one of them randomly
-				NodeList photosList = xmlResp.getElementsByTagName("photo");
-				int randIdx = new Double(Math.random() * photosList.getLength()).intValue();
+				// Get the list of photos from the response, and pick up one of them randomly
+				int randIdx = new Double(Math.random() * photos.size()).intValue();
 				logger.info("Photo #" + itemsMap.size() + ": selecting photo #" + randIdx + " in page #" + iPage + " out of " + maxPages + " pages");
 
-				PhotoItem item = makePhotoItemFromXmlPhotoElement((Element) (photosList.item(randIdx)), -1);
+				PhotoItem item = photos.getPhotosList().get(randIdx);
+				item.setInterestingnessRank(0);
 				if (itemsMap.containsKey(item.getPhotoId()))
 					// Is it a bug in Flickr or in this code? Anyway sometimes the same id is returned multiple times in different pages
 					// (???)
@@ -401,16 +379,7 @@ public class FlickrService {
 			String urlStr = FLICKR_SERVICES_URL + FlickrUtil.signApi(config.getString("fm.flickr.api.wrapper.flickr_secret"), listParams);
 
 			// Call the service and parse the XML response
-			Document xmlResp = FlickrUtil.launchRequest(urlStr);
-
-			// Get the page number and max page
-			Element photos = (Element) xmlResp.getElementsByTagName("photos").item(0);
-			int maxPages = Integer.valueOf(photos.getAttribute("pages"));
-			int pageNumber = Integer.valueOf(photos.getAttribute("page"));
-
-			// Get the list of photo nodes from the response
-			NodeList photosList = xmlResp.getElementsByTagName("photo");
-			return new PhotoItemsSet(makePhotoListFromNodesList(photosList), pageNumber, maxPages);
+			return FlickrResponseParser.parsePhotos(FlickrUtil.launchRawRequest(urlStr));
 
 		} catch (ServiceException e) {
 			logger.error("Error while requesting Flickr service", e);
@@ -440,16 +409,7 @@ public class FlickrService {
 			String urlStr = FLICKR_SERVICES_URL + FlickrUtil.signApi(config.getString("fm.flickr.api.wrapper.flickr_secret"), listParams);
 
 			// Call the service and parse the XML response
-			Document xmlResp = FlickrUtil.launchRequest(urlStr);
-
-			// Get the page number and max page
-			Element photos = (Element) xmlResp.getElementsByTagName("photos").item(0);
-			int maxPages = Integer.valueOf(photos.getAttribute("pages"));
-			int pageNumber = Integer.valueOf(photos.getAttribute("page"));
-
-			// Get the list of photo nodes from the response
-			NodeList photosList = xmlResp.getElementsByTagName("photo");
-			return new PhotoItemsSet(makePhotoListFromNodesList(photosList), pageNumber, maxPages);
+			return FlickrResponseParser.parsePhotos(FlickrUtil.launchRawRequest(urlStr));
 
 		} catch (ServiceException e) {
 			logger.error("Error while requesting Flickr service", e);
@@ -575,12 +535,8 @@ public class FlickrService {
 			// Sign the query and build the url
 			String urlStr = FLICKR_SERVICES_URL + FlickrUtil.signApi(config.getString("fm.flickr.api.wrapper.flickr_secret"), listParams);
 
-			// Call the service and parse the XML response
-			Document xmlResp = FlickrUtil.launchRequest(urlStr);
-
-			// Get the list of pool nodes only from the response
-			NodeList pools = xmlResp.getElementsByTagName("pool");
-			return new GroupItemsSet(makeGroupListFromContextNodesList(pools), photoId);
+			// Call the service and parse the XML response: get the list of pool nodes only
+			return new GroupItemsSet(FlickrResponseParser.parseGroups(FlickrUtil.launchRawRequest(urlStr), "pool", "title"), photoId);
 
 		} catch (ServiceException e) {
 			logger.error("Error while requesting Flickr service", e);
@@ -606,11 +562,7 @@ public class FlickrService {
 			String urlStr = FLICKR_SERVICES_URL + FlickrUtil.signApi(config.getString("fm.flickr.api.wrapper.flickr_secret"), listParams);
 
 			// Call the service and parse the XML response
-			Document xmlResp = FlickrUtil.launchRequest(urlStr);
-
-			// Get the list of pool nodes only from the response
-			NodeList tags = xmlResp.getElementsByTagName("tag");
-			return new TagItemsSet(makeTagListFromTagNodesList(tags), photoId);
+			return new TagItemsSet(FlickrResponseParser.parseTags(FlickrUtil.launchRawRequest(urlStr)), photoId);
 
 		} catch (ServiceException e) {
 			logger.error("Error while requesting Flickr service", e);
@@ -636,12 +588,8 @@ public class FlickrService {
 			// Sign the query and build the url
 			String urlStr = FLICKR_SERVICES_URL + FlickrUtil.signApi(config.getString("fm.flickr.api.wrapper.flickr_secret"), listParams);
 
-			// Call the service and parse the XML response
-			Document xmlResp = FlickrUtil.launchRequest(urlStr);
-
-			// Get the number of favorites only
-			Element photo = (Element) xmlResp.getElementsByTagName("photo").item(0);
-			return photo.getAttribute("total");
+			// Call the service and parse the XML response: get the number of favorites only
+			return FlickrResponseParser.parseAttribute(FlickrUtil.launchRawRequest(urlStr), "photo", "total");
 
 		} catch (ServiceException e) {
 			logger.error("Error while requesting Flickr service", e);
@@ -650,13 +598,18 @@ public class FlickrService {
 	}
 
 	/**
-	 * Retrieve information about a user including number of contacts and followers
+	 * Retrieve information about a user including number of contacts and followers.
+	 * Users are kept in a cache for some time (see {@link UserInfoCache}), the instance returned must not be modified.
 	 * 
 	 * @param userId
 	 * @return user information
 	 */
 	public UserInfo getUserInfo(String userId) {
 		logger.debug("begin getUserInfo, userId:" + userId);
+		UserInfo cached = UserInfoCache.get(userId);
+		if (cached != null)
+			return cached;
+
 		try {
 			UserInfo user = new UserInfo();
 			user.setUserId(userId);
@@ -719,6 +672,7 @@ public class FlickrService {
 				user.setNumberOfFollowers(Integer.valueOf(element.getAttribute("total")));
 
 			logger.debug("Returning info: " + user.toString());
+			UserInfoCache.put(user);
 			return user;
 
 		} catch (ServiceException e) {
@@ -773,28 +727,20 @@ public class FlickrService {
 	}
 
 	/**
-	 * Retrieve the number of photos that were added to a the specified group between startDate and endDate, by using a
-	 * dichotomy method to find both dates in the group
+	 * Retrieve the number of photos that were added to a the specified group between startDate and endDate, by locating
+	 * both dates in the group (see {@link GroupPoolLocator})
 	 * 
 	 * @param groupId
 	 * @param startDateStr
 	 *            start date of the period, formated as yyyy-mm-dd
 	 * @param endDateStr
 	 *            end date of the period, formated as yyyy-mm-dd
-	 * @return a map with the number of photos posted to a the group over the given period, and the total number of photos
-	 *         of the group. Null if any error occurs.
+	 * @return the number of photos posted to a the group over the given period. Null if any error occurs.
 	 */
 	public Long getNbOfPhotosAddedToGroup(String groupId, String startDateStr, String endDateStr) {
 		logger.debug("begin getNbOfPhotosAddedToGroup, groupId:" + groupId);
 		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
 
-		// Prepare the requests
-		TreeMap<String, String> listParams = new TreeMap<String, String>();
-		listParams.put("api_key", config.getString("fm.flickr.api.wrapper.flickr_apikey"));
-		listParams.put("method", "flickr.groups.pools.getPhotos");
-		listParams.put("group_id", groupId);
-		listParams.put("per_page", Integer.toString(MAX_PHOTOS_PER_PAGE));
-
 		// Convert start and end dates to unix timestamps
 		long startDate, endDate;
 		try {
@@ -807,34 +753,30 @@ public class FlickrService {
 		}
 
 		try {
-			Map<String, Long> result = null;
+			// The photos seen while looking for the start date are reused to look for the end date
+			GroupPoolLocator locator = new GroupPoolLocator(groupId);
 
 			// --- Search the position of the first photo added to the group just before the start date
 			logger.debug("Looking for start date in the group...");
-			result = findDateInGroupByDicotomy(groupId, startDate);
-			if (result == null) {
+			long startPosition = locator.locate(startDate);
+			if (startPosition < 0) {
 				logger.warn("Could not find the page of the group for the start date");
 				return null;
 			}
-			long startPage = result.get("page");
-			long indexInStartPage = result.get("indexInPage");
 
 			// --- Search the position of the first photo added to the group just before the end date
-
 			logger.debug("Looking for end date in the group...");
-			result = findDateInGroupByDicotomy(groupId, endDate);
-			if (result == null) {
+			long endPosition = locator.locate(endDate);
+			if (endPosition < 0) {
 				logger.warn("Could not find the page of the group for the end date");
 				return null;
 			}
-			long endPage = result.get("page");
-			long indexInEndPage = result.get("indexInPage");
 
-			// Final count to calculate the number of photos posted during the 2 dates:
-			// number of full pages * 500 + number of remaining photos on the start page + number of remaining photos on the end
-			// page
-			long nbPosted = (startPage - endPage - 1) * 500 + indexInStartPage + (500 - indexInEndPage);
-			logger.debug("Number of photos added to group between " + startDate + " end " + endDate + ": " + nbPosted);
+			// Photos are sorted from the most recent to the oldest: the photos posted during the 2 dates are those
+			// between the 2 positions
+			long nbPosted = startPosition - endPosition;
+			locator.saveIndex();
+			logger.debug("Number of photos added to group between " + startDate + " end " + endDate + ": " + nbPosted + " (" + locator.getNbRequests() + " requests)");
 
 			return nbPosted;
 
@@ -845,116 +787,218 @@ public class FlickrService {
 	}
 
 	/**
-	 * This method implements a dicotomy method to locate a date in a group: it looks for photos in the group, using a
-	 * paging mechanism, until it finds the page where the searched date fits between the post dates (attributes dateadded)
-	 * of 2 photos.
-	 * 
-	 * @param groupId
-	 *            the group in which we want to locate the date
-	 * @param searchedDate
-	 *            the date searched
-	 * @return
-	 *         <p>
-	 * 		A map with the page number and the index in this page of the first photo added just before the searched date.
-	 *         </p>
-	 *         Return null if no page was found for that date or if any error occurs.
-	 * @throws ServiceException
+	 * Locate dates in the pool of a group, that is the position of the first photo added before a date. The photos of a
+	 * pool are returned from the most recent to the oldest, so the position is searched by interpolating the date between
+	 * the dates (attribute dateadded) of the photos already seen around it. Pages of {@link #PROBE_SIZE} photos are
+	 * requested, rather than full pages, as only a few photos are needed at each step of the search. Once the date is
+	 * located within less than a full page, the photos left are requested at once.
+	 * <p>
+	 * All the photos seen are kept, so that locating another date in the same group starts from what was already seen.
+	 * When interpolation does not halve the search interval, the next step is a bisection, so that the search never
+	 * takes more steps than a dichotomy.
+	 * </p>
+	 * Photos seen in previous runs are given by the {@link GroupPoolIndex}: the first step of the search looks where
+	 * they say the date is, and the photos seen are added to the index.
 	 */
-	private Map<String, Long> findDateInGroupByDicotomy(String groupId, Long searchedDate) throws ServiceException {
-		logger.debug("begin findDateInGroupByDicotomy, groupId:" + groupId + ", searchedDate: " + searchedDate);
+	private static class GroupPoolLocator
+	{
+		/** Number of photos requested at each step of the search */
+		private static final int PROBE_SIZE = 50;
 
-		long page = 1;
-		long indexInPage = 0;
-		boolean foundPage = false;
+		/** Max number of requests to locate one date, in case the pool changes during the search */
+		private static final int MAX_REQUESTS = 64;
 
-		// Prepare the requests tosearch photos in the group
-		TreeMap<String, String> listParams = new TreeMap<String, String>();
-		listParams.put("api_key", config.getString("fm.flickr.api.wrapper.flickr_apikey"));
-		listParams.put("method", "flickr.groups.pools.getPhotos");
-		listParams.put("group_id", groupId);
-		listParams.put("per_page", Integer.toString(MAX_PHOTOS_PER_PAGE));
-
-		int dico = 2; // at each step of the dicotomy, this factor is pultiplied by 2
-		long increment = 1;
-
-		// Loop until we find the page or the increment is 0, in this last case we have finished
-		// the dicotomy without finding the page
-		while (!foundPage && increment > 0) {
-			// At each turn, reset the page paramter: remove it then put it again
-			if (listParams.containsKey("page"))
-				listParams.remove("page");
-			listParams.put("page", Long.toString(page));
-			Document xmlResp = FlickrUtil.launchRequest(FLICKR_SERVICES_URL + FlickrUtil.formatUrlParams(listParams));
-
-			// Get the max page attribute from the response
-			Element photos = (Element) xmlResp.getElementsByTagName("photos").item(0);
-			long maxPages = Long.valueOf(photos.getAttribute("pages"));
-
-			// Calculate the increment of the dicotomy algorithm
-			increment = Math.round(new Float(maxPages) / dico);
-			logger.trace("page=" + page + ", maxPage=" + maxPages + ", increment=" + increment);
-
-			// Get the first (morst recent) and last (oldest) photos of the page
-			NodeList photosList = xmlResp.getElementsByTagName("photo");
-			int nbPhotos = photosList.getLength();
-			if (nbPhotos > 0) {
-
-				Element firstphoto = (Element) photosList.item(0);
-				Element lastphoto = (Element) photosList.item(nbPhotos - 1);
-
-				// If the searched date is before the last (oldest) photo, ie.
-				// if date < date(last photo), then we must look further in the past
-				if (searchedDate < Long.valueOf(lastphoto.getAttribute("dateadded"))) {
-					if (page + increment < maxPages)
-						page += increment;
-					logger.trace("searchedDate < " + lastphoto.getAttribute("dateadded") + ": going further in the past");
+		/** Number of photos requested around the position given by the index, in case photos were removed since */
+		private static final int INDEX_MARGIN = 20;
+
+		private String groupId;
+
+		private TreeMap<String, String> listParams = new TreeMap<String, String>();
+
+		/** Dates added of the photos of the index, by position from the oldest photo */
+		private TreeMap<Long, Long> index;
+
+		/** Dates added of the photos of the index, by position in the pool. Null until the size of the pool is known */
+		private TreeMap<Long, Long> hints = null;
+
+		/** Photos to add to the index, by position in the pool */
+		private TreeMap<Long, Long> samples = new TreeMap<Long, Long>();
+
+		/** Number of photos in the pool as returned with the last page, -1 if unknown */
+		private long poolSize = -1;
+
+		/** Dates added of the photos seen, by position in the pool (0 = most recent photo) */
+		private TreeMap<Long, Long> dates = new TreeMap<Long, Long>();
+
+		/** Number of pages of PROBE_SIZE photos in the pool, -1 until the first request */
+		private long nbPages = -1;
+
+		/** Number of photos in the pool, -1 until the last page was seen */
+		private long nbPhotos = -1;
+
+		private int nbRequests = 0;
+
+		public GroupPoolLocator(String groupId) {
+			this.groupId = groupId;
+			index = GroupPoolIndex.load(groupId);
+			listParams.put("api_key", config.getString("fm.flickr.api.wrapper.flickr_apikey"));
+			listParams.put("method", "flickr.groups.pools.getPhotos");
+			listParams.put("group_id", groupId);
+		}
+
+		/**
+		 * @param searchedDate the date searched, as a unix timestamp
+		 * @return the position of the first photo added before the searched date, that is the number of photos added
+		 *         since that date. -1 if the position could not be found.
+		 * @throws ServiceException
+		 */
+		public long locate(long searchedDate) throws ServiceException {
+			logger.debug("begin locate, searchedDate: " + searchedDate);
+			if (nbPages < 0)
+				fetch(PROBE_SIZE, 1);
+			if (hints == null && poolSize >= 0) {
+				hints = new TreeMap<Long, Long>();
+				for (Map.Entry<Long, Long> entry : index.entrySet())
+					if (entry.getKey() < poolSize)
+						hints.put(poolSize - 1 - entry.getKey(), entry.getValue());
+			}
+
+			long width = Long.MAX_VALUE;
+			boolean bisect = false;
+			boolean useHints = (hints != null);
+			for (int i = 0; i < MAX_REQUESTS; i++) {
+				// Find the photos seen just around the searched date: hi is the first photo added before the date,
+				// lo the photo just before it, added at or after the date
+				long lo = -1, hi = -1;
+				long loDate = 0, hiDate = 0;
+				for (Map.Entry<Long, Long> entry : dates.entrySet()) {
+					if (entry.getValue() < searchedDate) {
+						hi = entry.getKey();
+						hiDate = entry.getValue();
+						break;
+					}
+					lo = entry.getKey();
+					loDate = entry.getValue();
 				}
 
-				// If the searched date is between the first (most recent) and the last (oldest) photos of the page, ie.
-				// older than the first photo and more recent than the last photo, ie.
-				// if date(last photo) <= searchedDate <= date(first photo), then we have found the right page!
-				else if (Long.valueOf(lastphoto.getAttribute("dateadded")) <= searchedDate
-						&& searchedDate <= Long.valueOf(firstphoto.getAttribute("dateadded"))) {
-					indexInPage = 0;
-					while (indexInPage < photosList.getLength()) {
-						Element photo = (Element) photosList.item((int) indexInPage);
-						if (searchedDate > Long.valueOf(photo.getAttribute("dateadded")))
+				// Look first around the photos of the index that surround the searched date
+				long upper = (hi >= 0) ? hi : poolSize;
+				if (useHints && upper > lo + 1) {
+					useHints = false;
+					long hintLo = -1, hintHi = -1;
+					for (Map.Entry<Long, Long> entry : hints.subMap(lo, false, upper, false).entrySet()) {
+						if (entry.getValue() < searchedDate) {
+							hintHi = entry.getKey();
 							break;
-						indexInPage++;
-						// When this inner loop is over, we have found the first photo, in the page, that is more recent than startDate
+						}
+						hintLo = entry.getKey();
+					}
+					if (hintLo >= 0 || hintHi >= 0) {
+						long first = (hintLo < 0) ? lo + 1 : Math.max(lo + 1, hintLo - INDEX_MARGIN);
+						long last = (hintHi < 0) ? upper - 1 : Math.min(upper - 1, hintHi + INDEX_MARGIN);
+						int hintPage = getPageSize(first, last);
+						if (hintPage > 0) {
+							logger.trace("Index gives the searched date between " + hintLo + " and " + hintHi);
+							fetch(hintPage, first / hintPage + 1);
+							continue;
+						}
 					}
-					foundPage = true;
-					break;
 				}
 
-				// If the searched date is more recent than (after) the first (most recent) photo, ie.
-				// if searchedDate > date(first photo), then we have to get back a bit to more recent photos
-				else if (searchedDate > Long.valueOf(firstphoto.getAttribute("dateadded"))) {
-					if (page == 1) {
-						// If page == 1, then the searched date is later than last post on the group, so we actually found the date
-						logger.debug("There was no post later than the searched date");
-						foundPage = true;
-						indexInPage = 0;
-						break;
+				if (hi < 0) {
+					// All the photos seen were added after the searched date: look at the oldest ones
+					if (nbPhotos >= 0) {
+						logger.debug("There was no post before the searched date");
+						return nbPhotos;
 					}
-					if (page - increment > 0)
-						page -= increment;
-					logger.debug("searchedDate > " + firstphoto.getAttribute("dateadded") + ": going futur");
+					fetch(PROBE_SIZE, nbPages);
+					continue;
+				}
+				if (hi == lo + 1) {
+					logger.debug("Position of the searched date in the group: " + hi);
+					samples.put(hi, hiDate);
+					if (lo >= 0)
+						samples.put(lo, loDate);
+					return hi;
+				}
+
+				// All the photos between lo and hi fit in one page: get them at once
+				int perPage = getPageSize(lo + 1, hi - 1);
+				if (perPage > 0) {
+					fetch(perPage, (lo + 1) / perPage + 1);
+					continue;
 				}
+
+				// Next position to look at, strictly between lo and hi
+				long position;
+				bisect = !bisect && (hi - lo) > width / 2;
+				width = hi - lo;
+				if (bisect || lo < 0)
+					position = (lo + hi) / 2;
+				else
+					position = lo + 1 + (long) ((double) (loDate - searchedDate) / (loDate - hiDate) * (hi - lo - 1));
+				logger.trace("lo=" + lo + ", hi=" + hi + ", position=" + position + (bisect ? " (bisection)" : ""));
+				fetch(PROBE_SIZE, position / PROBE_SIZE + 1);
 			}
 
-			// Next turn in the dicotomy
-			dico *= 2;
+			logger.warn("Could not locate date " + searchedDate + " after " + MAX_REQUESTS + " requests");
+			return -1;
 		}
 
-		if (!foundPage) {
-			return null;
-		} else {
-			logger.debug("Page of the group for the searched date: " + page + ", index in page: " + indexInPage);
-			HashMap<String, Long> result = new HashMap<String, Long>();
-			result.put("page", page);
-			result.put("indexInPage", indexInPage);
-			return result;
+		/**
+		 * Add the photos seen to the index of the group
+		 */
+		public void saveIndex() {
+			if (poolSize < 0)
+				return;
+			TreeMap<Long, Long> photos = new TreeMap<Long, Long>();
+			for (Map.Entry<Long, Long> entry : samples.entrySet())
+				if (entry.getKey() < poolSize)
+					photos.put(poolSize - 1 - entry.getKey(), entry.getValue());
+			GroupPoolIndex.save(groupId, photos);
+		}
+
+		/**
+		 * @return number of requests sent so far
+		 */
+		public int getNbRequests() {
+			return nbRequests;
+		}
+
+		/**
+		 * @return the smallest page size such that the photos from position first to last are in the same page, -1 if
+		 *         they do not fit in one page
+		 */
+		private int getPageSize(long first, long last) {
+			for (long perPage = last - first + 1; perPage <= MAX_PHOTOS_PER_PAGE; perPage++)
+				if (first / perPage == last / perPage)
+					return (int) perPage;
+			return -1;
+		}
+
+		/**
+		 * Get a page of photos of the pool and keep their dates
+		 */
+		private void fetch(int perPage, long page) throws ServiceException {
+			listParams.put("per_page", Integer.toString(perPage));
+			listParams.put("page", Long.toString(page));
+			PhotoItemsSet photos = FlickrResponseParser.parsePhotos(FlickrUtil.launchRawRequest(FLICKR_SERVICES_URL + FlickrUtil.formatUrlParams(listParams)));
+			nbRequests++;
+			if (perPage == PROBE_SIZE)
+				nbPages = photos.getMaxPage();
+			if (photos.getTotal() >= 0)
+				poolSize = photos.getTotal();
+
+			ArrayList<PhotoItem> photosList = photos.getPhotosList();
+			long first = (page - 1) * perPage;
+			for (int i = 0; i < photosList.size(); i++)
+				dates.put(first + i, Long.valueOf(photosList.get(i).getDateAdded()));
+			if (!photosList.isEmpty()) {
+				samples.put(first, dates.get(first));
+				samples.put(first + photosList.size() - 1, dates.get(first + photosList.size() - 1));
+			}
+			if (page >= photos.getMaxPage())
+				nbPhotos = first + photosList.size();
 		}
 	}
 
@@ -977,12 +1021,8 @@ public class FlickrService {
 			// Sign the query and build the url
 			String urlStr = FLICKR_SERVICES_URL + FlickrUtil.signApi(config.getString("fm.flickr.api.wrapper.flickr_secret"), listParams);
 
-			// Call the service and parse the XML response
-			Document xmlResp = FlickrUtil.launchRequest(urlStr);
-
-			// Get the list of group nodes from the response
-			NodeList pools = xmlResp.getElementsByTagName("group");
-			return new GroupItemsSet(makeGroupListFromGroupNodesList(pools));
+			// Call the service and parse the XML response: get the list of group nodes
+			return new GroupItemsSet(FlickrResponseParser.parseGroups(FlickrUtil.launchRawRequest(urlStr), "group", "name"));
 
 		} catch (ServiceException e) {
 			logger.error("Error while requesting Flickr service", e);
@@ -1079,10 +1119,8 @@ public class FlickrService {
 
 			// Call the service and parse the XML response
 			String urlStr = FLICKR_SERVICES_URL + FlickrUtil.formatUrlParams(listParams);
-			Document xmlResp = FlickrUtil.launchRequest(urlStr);
-
-			Element photos = (Element) xmlResp.getElementsByTagName("photos").item(0);
-			maxPages = Integer.valueOf(photos.getAttribute("pages"));
+			String pages = FlickrResponseParser.parseAttribute(FlickrUtil.launchRawRequest(urlStr), "photos", "pages");
+			maxPages = Integer.valueOf(pages);
 			return maxPages;
 
 		} catch (ServiceException e) {
@@ -1094,125 +1132,6 @@ public class FlickrService {
 		}
 	}
 
-	/**
-	 * Build the URL of an image, based on the photo XML element retrieved from the Flickr API (e.g. interestingness)
-	 * 
-	 * @param photoElement
-	 *            the photo node from the xml response
-	 * @param type
-	 *            the type of the image to return a url for: squ@are (75x75), thumbnail, or medium
-	 * @return formatted url according to the scheme:
-	 *         <code>http://farm{farm-id}.static.flickr.com/{server-id}/id_{secret}....jpg</code>
-	 */
-	private String getPhotoUrl(Element photoElement, ImageType type) {
-		String farmId = photoElement.getAttribute("farm");
-		String serverId = photoElement.getAttribute("server");
-		String id = photoElement.getAttribute("id");
-		String secret = photoElement.getAttribute("secret");
-
-		String url = "http://farm" + farmId + ".static.flickr.com/" + serverId + "/" + id + "_" + secret;
-		switch (type) {
-		case SQUARE:
-			return url + "_s.jpg";
-		case THUMBNAIL:
-			return url + "_t.jpg";
-		case BIG:
-			return url + "_b.jpg";
-		case MEDIUM:
-		default:
-			return url + ".jpg";
-		}
-	}
-
-	/**
-	 * Based on an xml list of nodes of type &lt;photo&gt;, build an array list of equivalent PhotoItem instances.
-	 * 
-	 * @param photosList
-	 *            list of xml nodes
-	 * @return array list of photos, possibly empty.
-	 */
-	private ArrayList<PhotoItem> makePhotoListFromNodesList(NodeList photosList) {
-		ArrayList<PhotoItem> items = new ArrayList<PhotoItem>();
-
-		// For each photo, build a result PhotoItem and populate the result list
-		for (int i = 0; i < photosList.getLength(); i++) {
-			Element photoElement = (Element) photosList.item(i);
-			items.add(makePhotoItemFromXmlPhotoElement(photoElement, i));
-		}
-		return items;
-	}
-
-	/**
-	 * Based on an xml element of type &lt;photo&gt;, build an equivalent PhotoItem instance.
-	 * 
-	 * @param photoElement
-	 *            the xml element to parse
-	 * @param rank
-	 *            the photo rank in interestingness. If this photo was not retrieved from Interestingness just put any
-	 *            integer value
-	 * @return a photo item equivalent to the xml element
-	 */
-	private PhotoItem makePhotoItemFromXmlPhotoElement(Element photoElement, int rank) {
-		PhotoItem photoItem = new PhotoItem();
-		photoItem.setPhotoId(photoElement.getAttribute("id"));
-		photoItem.setInterestingnessRank(rank + 1);
-		photoItem.setSquareUrl(getPhotoUrl(photoElement, ImageType.SQUARE));
-		photoItem.setMediumUrl(getPhotoUrl(photoElement, ImageType.MEDIUM));
-		photoItem.setBigUrl(getPhotoUrl(photoElement, ImageType.BIG));
-		photoItem.setTitle(photoElement.getAttribute("title"));
-		photoItem.setUserId(photoElement.getAttribute("owner"));
-
-		return photoItem;
-	}
-
-	/**
-	 * Based on an xml list of contexts (pools and sets a photo belongs to), build an array list of equivalent GroupItem
-	 * instances.
-	 * 
-	 * @param groupsList
-	 *            list of xml nodes
-	 * @return array list of groups, possibly empty.
-	 */
-	private ArrayList<GroupItem> makeGroupListFromContextNodesList(NodeList groupsList) {
-		ArrayList<GroupItem> items = new ArrayList<GroupItem>();
-
-		// For each group, build a result GroupItem and populate the result list
-		for (int i = 0; i < groupsList.getLength(); i++) {
-			Element element = (Element) groupsList.item(i);
-			GroupItem item = new GroupItem();
-
-			item.setGroupId(element.getAttribute("id"));
-			item.setGroupName(element.getAttribute("title"));
-			items.add(item);
-		}
-
-		return items;
-	}
-
-	/**
-	 * Based on an xml list of groups (from flickr.groups.pools.getGroups service), build an array list of equivalent
-	 * GroupItem instances.
-	 * 
-	 * @param groupsList
-	 *            list of xml nodes
-	 * @return array list of groups, possibly empty.
-	 */
-	private ArrayList<GroupItem> makeGroupListFromGroupNodesList(NodeList groupsList) {
-		ArrayList<GroupItem> items = new ArrayList<GroupItem>();
-
-		// For each group, build a result GroupItem and populate the result list
-		for (int i = 0; i < groupsList.getLength(); i++) {
-			Element element = (Element) groupsList.item(i);
-			GroupItem item = new GroupItem();
-
-			item.setGroupId(element.getAttribute("id"));
-			item.setGroupName(element.getAttribute("name"));
-			items.add(item);
-		}
-
-		return items;
-	}
-
 	/**
 	 * Based on an xml list of tags (from flickr.tags.getListPhoto service), build an array list of equivalent TagItem
 	 * instances.
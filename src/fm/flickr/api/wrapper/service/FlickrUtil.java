@@ -1,14 +1,20 @@
 package fm.flickr.api.wrapper.service;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.net.URLEncoder;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -28,6 +34,12 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
+import fm.flickr.api.wrapper.transport.HttpClientTransport;
+import fm.flickr.api.wrapper.transport.HttpTransport;
+import fm.flickr.api.wrapper.transport.UrlConnectionTransport;
+import fm.flickr.api.wrapper.util.HttpStatusException;
+import fm.flickr.api.wrapper.util.RateLimiter;
+import fm.flickr.api.wrapper.util.ResponseDiagnostics;
 import fm.flickr.api.wrapper.util.ServiceException;
 import fm.util.Config;
 
@@ -43,9 +55,48 @@ public class FlickrUtil
 
 	private static Configuration config = Config.getConfiguration();
 
+	/** Transport used to send the requests, shared by all threads */
+	private static HttpTransport transport = makeTransport();
+
+	/**
+	 * Create the transport set in property 'fm.flickr.api.wrapper.transport': http2 (default) uses the
+	 * java.net.http client, urlconnection uses HttpURLConnection.
+	 */
+	private static HttpTransport makeTransport() {
+		String type = config.getString("fm.flickr.api.wrapper.transport", "http2");
+		logger.debug("Using http transport: " + type);
+		if ("urlconnection".equalsIgnoreCase(type))
+			return new UrlConnectionTransport();
+		else
+			return new HttpClientTransport();
+	}
+
+	/**
+	 * Replace the transport used to send the requests, e.g. to send requests to a stub server
+	 * 
+	 * @param httpTransport the new transport
+	 */
+	public static void setTransport(HttpTransport httpTransport) {
+		transport = httpTransport;
+	}
+
+	/** Parser of the DOM responses, one per thread since DocumentBuilder is not thread-safe */
+	private static ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+		protected DocumentBuilder initialValue() {
+			try {
+				return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			} catch (ParserConfigurationException e) {
+				logger.error("Cannot create XML document builder", e);
+				return null;
+			}
+		}
+	};
+
 	/**
 	 * Launch an http GET request to a flickr service. Fill try 3 times in case of IO error, and will
 	 * then throw an exception after the 3rd error.
+	 * The calling thread may be blocked before the request is sent, to comply with the rate limit of
+	 * the API key (see {@link RateLimiter}).
 	 * 
 	 * @param urlStr service url incliding parameters
 	 * @return payload xml repsonse from the server
@@ -53,49 +104,55 @@ public class FlickrUtil
 	 * response parsing error
 	 */
 	public static Document launchRequest(String urlStr) throws ServiceException {
+		return parseResponse(launchRawRequest(urlStr));
+	}
+
+	/**
+	 * Launch an http GET request to a flickr service like {@link #launchRequest(String)}, but return the response
+	 * body without parsing it, typically to parse it with the {@link FlickrResponseParser}.
+	 * The Flickr status of the response is not checked.
+	 * 
+	 * Requests rejected with http status 429 or 5xx are tried again like in case of IO error, after the
+	 * rate limiter has slowed down.
+	 * Responses of idempotent methods may be served from the disk cache (see {@link ResponseCache}).
+	 * 
+	 * @param urlStr service url incliding parameters
+	 * @return uncompressed response body
+	 * @throws ServiceException in case of http connection error
+	 */
+	public static byte[] launchRawRequest(String urlStr) throws ServiceException {
+		byte[] cached = ResponseCache.get(urlStr);
+		if (cached != null)
+			return cached;
+
+		String apiKey = getApiKey(urlStr);
 		int attempts = 0;
 		while (attempts < config.getInt("fm.flickr.api.wrapper.nb_tries")) {
 			try {
-				URL url = new URL(urlStr);
-				logger.trace("Will get url: " + url.toString());
-				HttpURLConnection con = (HttpURLConnection) url.openConnection();
-				con.setRequestMethod("GET");
-				con.setConnectTimeout(config.getInt("fm.flickr.api.wrapper.connection_timeout"));
-				con.setReadTimeout(config.getInt("fm.flickr.api.wrapper.read_timeout"));
-
-				// Run request and check HTTP status code
-				con.connect();
-				if (con.getResponseCode() != 200) {
-					logger.error("Request failed, HTTP response: " + con.getResponseMessage());
-					throw new ServiceException("Request failed, HTTP response: " + con.getResponseMessage());
-				}
-
-				// Read and parse the XML response
-				DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-				Document xmlResp = db.parse(con.getInputStream());
-				logger.trace("XML payload response: " + xmlToString(xmlResp));
+				RateLimiter.acquire(apiKey);
+				logger.trace("Will get url: " + urlStr);
+				byte[] body = transport.get(urlStr);
+				RateLimiter.success(apiKey);
+				ResponseCache.put(urlStr, body);
+				return received(urlStr, body);
 
-				// Check the Flickr status
-				String error = FlickrUtil.checkFlickrResponseStatus(xmlResp);
-				if (error != null) {
-					logger.warn("Flickr returned an error: " + error);
-					throw new ServiceException("Flickr returned an error: " + error);
-				} else
-					return xmlResp;
+			} catch (HttpStatusException e) {
+				RateLimiter.httpError(apiKey, e.getStatus());
+				attempts++;
+				if (!e.isThrottling() || attempts >= config.getInt("fm.flickr.api.wrapper.nb_tries"))
+					throw e;
+				else
+					logger.error("Trying attempt #" + (attempts + 1));
 
 			} catch (IOException e) {
 				logger.error("Connection failed", e);
 				attempts++;
 				if (attempts >= config.getInt("fm.flickr.api.wrapper.nb_tries"))
 					throw new ServiceException("IO error, http connection failed");
-				else
+				else {
 					logger.error("Trying attempt #" + (attempts + 1));
-			} catch (ParserConfigurationException e) {
-				logger.error( "Invalid XML response", e);
-				throw new ServiceException("Invalid XML response");
-			} catch (SAXException e) {
-				logger.error( "SAX error while parsing repsonse", e);
-				throw new ServiceException("SAX error while parsing response");
+					RateLimiter.waitBeforeRetry(attempts);
+				}
 			}
 		} // end while nb attempts
 
@@ -103,6 +160,168 @@ public class FlickrUtil
 		return null;
 	}
 
+	/**
+	 * Asynchronous version of {@link #launchRequest(String)}: no thread is blocked, neither the calling thread nor
+	 * the threads of the transport. The wait for the rate limiter and the wait before a new attempt are delays of
+	 * the tasks that send the request (see {@link CompletableFuture#delayedExecutor(long, TimeUnit)}). Like the
+	 * blocking version, the request is tried again up to 'fm.flickr.api.wrapper.nb_tries' times in case of IO error
+	 * or http status 429 or 5xx.
+	 * 
+	 * @param urlStr service url incliding parameters
+	 * @return future completed with the payload xml response, or completed exceptionally with a ServiceException
+	 */
+	public static CompletableFuture<Document> launchRequestAsync(String urlStr) {
+		byte[] cached = ResponseCache.get(urlStr);
+		if (cached != null) {
+			CompletableFuture<Document> result = new CompletableFuture<Document>();
+			try {
+				result.complete(parseResponse(cached));
+			} catch (ServiceException e) {
+				result.completeExceptionally(e);
+			}
+			return result;
+		}
+		return launchRequestAsync(urlStr, 1);
+	}
+
+	private static CompletableFuture<Document> launchRequestAsync(final String urlStr, final int attempt) {
+		final String apiKey = getApiKey(urlStr);
+		long waitNs = RateLimiter.reserve(apiKey);
+		CompletableFuture<byte[]> response;
+		if (waitNs <= 0) {
+			logger.trace("Will get url: " + urlStr);
+			response = transport.getAsync(urlStr);
+		} else {
+			response = flatten(CompletableFuture.supplyAsync(new Supplier<CompletableFuture<byte[]>>() {
+				public CompletableFuture<byte[]> get() {
+					logger.trace("Will get url: " + urlStr);
+					return transport.getAsync(urlStr);
+				}
+			}, CompletableFuture.delayedExecutor(waitNs, TimeUnit.NANOSECONDS)));
+		}
+
+		return flatten(response.handle(new BiFunction<byte[], Throwable, CompletableFuture<Document>>() {
+			public CompletableFuture<Document> apply(byte[] body, Throwable t) {
+				Throwable cause = (t instanceof CompletionException) ? t.getCause() : t;
+				CompletableFuture<Document> result = new CompletableFuture<Document>();
+
+				if (cause == null) {
+					RateLimiter.success(apiKey);
+					ResponseCache.put(urlStr, body);
+					try {
+						result.complete(parseResponse(received(urlStr, body)));
+					} catch (ServiceException e) {
+						result.completeExceptionally(e);
+					}
+				} else if (cause instanceof HttpStatusException) {
+					HttpStatusException e = (HttpStatusException) cause;
+					RateLimiter.httpError(apiKey, e.getStatus());
+					if (!e.isThrottling() || attempt >= config.getInt("fm.flickr.api.wrapper.nb_tries"))
+						result.completeExceptionally(e);
+					else {
+						// The rate limiter delays the new attempt until the end of the pause
+						logger.error("Trying attempt #" + (attempt + 1));
+						return launchRequestAsync(urlStr, attempt + 1);
+					}
+				} else if (cause instanceof IOException) {
+					logger.error("Connection failed", cause);
+					if (attempt >= config.getInt("fm.flickr.api.wrapper.nb_tries"))
+						result.completeExceptionally(new ServiceException("IO error, http connection failed"));
+					else {
+						logger.error("Trying attempt #" + (attempt + 1));
+						return flatten(CompletableFuture.supplyAsync(new Supplier<CompletableFuture<Document>>() {
+							public CompletableFuture<Document> get() {
+								return launchRequestAsync(urlStr, attempt + 1);
+							}
+						}, CompletableFuture.delayedExecutor(RateLimiter.getRetryDelayMs(attempt), TimeUnit.MILLISECONDS)));
+					}
+				} else
+					result.completeExceptionally(cause);
+				return result;
+			}
+		}));
+	}
+
+	/**
+	 * @return a future completed like the future returned by the given future
+	 */
+	private static <T> CompletableFuture<T> flatten(CompletableFuture<CompletableFuture<T>> future) {
+		return future.thenCompose(new Function<CompletableFuture<T>, CompletableFuture<T>>() {
+			public CompletableFuture<T> apply(CompletableFuture<T> result) {
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Extract the value of the api_key parameter from the url of a request
+	 * 
+	 * @param urlStr service url incliding parameters
+	 * @return the API key, or null if there is no api_key parameter
+	 */
+	private static String getApiKey(String urlStr) {
+		int start = urlStr.indexOf("api_key=");
+		if (start < 0)
+			return null;
+		start += "api_key=".length();
+		int end = urlStr.indexOf('&', start);
+		return (end < 0) ? urlStr.substring(start) : urlStr.substring(start, end);
+	}
+
+	/**
+	 * Keep track of a response body for diagnostics (see {@link ResponseDiagnostics}). The body is logged as is
+	 * at the trace level, without parsing or serialization.
+	 * 
+	 * @param urlStr url of the request
+	 * @param body uncompressed response body
+	 * @return the same response body
+	 */
+	private static byte[] received(String urlStr, byte[] body) {
+		ResponseDiagnostics.record(urlStr, body);
+		if (logger.isTraceEnabled())
+			logger.trace("XML payload response: " + new String(body, StandardCharsets.UTF_8));
+		return body;
+	}
+
+	/**
+	 * Parse the body of a response and check the Flickr status
+	 * 
+	 * @param body uncompressed response body
+	 * @return payload xml response
+	 * @throws ServiceException if the response is not valid XML or Flickr returned an error
+	 */
+	private static Document parseResponse(byte[] body) throws ServiceException {
+		try {
+			// Read and parse the XML response
+			DocumentBuilder db = documentBuilder.get();
+			if (db == null)
+				throw new ServiceException("Invalid XML response");
+			db.reset();
+			Document xmlResp = db.parse(new ByteArrayInputStream(body));
+
+			// Check the Flickr status
+			String error = FlickrUtil.checkFlickrResponseStatus(xmlResp);
+			if (error != null) {
+				logger.warn("Flickr returned an error: " + error);
+				Element errElt = (Element) xmlResp.getElementsByTagName("err").item(0);
+				if (errElt != null)
+					RateLimiter.flickrError(errElt.getAttribute("code"));
+				ResponseDiagnostics.dump("Flickr returned an error: " + error);
+				throw new ServiceException("Flickr returned an error: " + error);
+			} else
+				return xmlResp;
+
+		} catch (IOException e) {
+			logger.error( "Error while reading response", e);
+			ResponseDiagnostics.dump("Error while reading response");
+			throw new ServiceException("Error while reading response");
+		} catch (SAXException e) {
+			logger.error( "SAX error while parsing repsonse", e);
+			ResponseDiagnostics.dump("SAX error while parsing response");
+			throw new ServiceException("SAX error while parsing response");
+		}
+	}
+
 	/**
 	 * Check the status of the flickr response. A response with status ok will look like this:
 	 * 
@@ -224,7 +443,7 @@ public class FlickrUtil
 	 * @param buf Array of bytes to convert into hexadecimal reprensetation
 	 * @return Generated hexadecimal reprensetation
 	 */
-	private static String byteToHexString(byte buf[]) {
+	static String byteToHexString(byte buf[]) {
 		StringBuffer strbuf = new StringBuffer(buf.length * 2);
 		int i;
 
@@ -0,0 +1,139 @@
+package fm.flickr.api.wrapper.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+
+import fm.util.Config;
+
+/**
+ * Persistent index of the pools of groups: the dates (attribute dateadded) of some photos of each pool, learned while
+ * locating dates in the pool (see {@link FlickrService#getNbOfPhotosAddedToGroup(String, String, String)}). Next runs
+ * use them to guess where a date is in the pool, so that they only have to check the guess.
+ * <p>
+ * Pools grow at the head: the most recent photos come first, so the position of a photo in the pool changes as new
+ * photos are added. Photos are thus indexed by their position from the oldest photo of the pool, which does not change
+ * as long as no photo is removed from the pool. Since photos may be removed anyway, the index only gives hints that
+ * must be checked against the pool.
+ * </p>
+ * The index of each group is a file named after the group id in directory 'fm.flickr.api.wrapper.group.index.dir',
+ * with one line "position date" per photo. The index is disabled if no directory is given.
+ *
+ * @author fmichel
+ */
+public class GroupPoolIndex
+{
+	private static Logger logger = Logger.getLogger(GroupPoolIndex.class.getName());
+
+	private static Configuration config = Config.getConfiguration();
+
+	/** Max number of photos kept in the index of a group */
+	private static final int MAX_PHOTOS = 1000;
+
+	/** Index directory, null if the index is disabled */
+	private static File dir = null;
+
+	static {
+		String dirName = config.getString("fm.flickr.api.wrapper.group.index.dir", null);
+		if (dirName != null && !dirName.isEmpty()) {
+			dir = new File(dirName);
+			dir.mkdirs();
+		}
+	}
+
+	/**
+	 * Read the index of a group
+	 *
+	 * @param groupId group identifier
+	 * @return dates added of the photos of the pool, by position from the oldest photo. Empty if the group is not indexed.
+	 */
+	public static TreeMap<Long, Long> load(String groupId) {
+		TreeMap<Long, Long> dates = new TreeMap<Long, Long>();
+		if (dir == null)
+			return dates;
+		File file = getFile(groupId);
+		if (!file.exists())
+			return dates;
+
+		try {
+			BufferedReader buffer = new BufferedReader(new FileReader(file));
+			String str = buffer.readLine();
+			while (str != null) {
+				String[] tokens = str.split(" ");
+				if (tokens.length == 2)
+					dates.put(Long.valueOf(tokens[0]), Long.valueOf(tokens[1]));
+				str = buffer.readLine();
+			}
+			buffer.close();
+		} catch (IOException e) {
+			logger.warn("Cannot read index " + file.getName() + ", ignoring it: " + e.toString());
+			dates.clear();
+		} catch (NumberFormatException e) {
+			logger.warn("Invalid index " + file.getName() + ", ignoring it: " + e.toString());
+			dates.clear();
+		}
+		return dates;
+	}
+
+	/**
+	 * Add photos seen in the pool of a group to its index. Photos indexed previously are dropped if their date is not
+	 * consistent with those of the new photos, which means that photos were removed from the pool in the meantime.
+	 *
+	 * @param groupId group identifier
+	 * @param photos dates added of the photos seen, by position from the oldest photo of the pool
+	 */
+	public static void save(String groupId, TreeMap<Long, Long> photos) {
+		if (dir == null || photos.isEmpty())
+			return;
+
+		TreeMap<Long, Long> dates = load(groupId);
+		Iterator<Map.Entry<Long, Long>> it = dates.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, Long> entry = it.next();
+			Map.Entry<Long, Long> older = photos.floorEntry(entry.getKey());
+			Map.Entry<Long, Long> newer = photos.ceilingEntry(entry.getKey());
+			if ((older != null && older.getValue() > entry.getValue()) || (newer != null && newer.getValue() < entry.getValue()))
+				it.remove();
+		}
+		dates.putAll(photos);
+
+		// Keep photos evenly spread over the pool when the index is too large
+		if (dates.size() > MAX_PHOTOS) {
+			int step = (dates.size() + MAX_PHOTOS - 1) / MAX_PHOTOS;
+			TreeMap<Long, Long> kept = new TreeMap<Long, Long>();
+			int i = 0;
+			for (Map.Entry<Long, Long> entry : dates.entrySet())
+				if (i++ % step == 0)
+					kept.put(entry.getKey(), entry.getValue());
+			dates = kept;
+		}
+
+		File file = getFile(groupId);
+		try {
+			File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+			PrintWriter writer = new PrintWriter(tmp);
+			for (Map.Entry<Long, Long> entry : dates.entrySet())
+				writer.println(entry.getKey() + " " + entry.getValue());
+			writer.close();
+			if (writer.checkError())
+				throw new IOException("error when writing file " + tmp.getPath());
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.warn("Cannot save index " + file.getName() + ". Exception: " + e.toString());
+		}
+	}
+
+	private static File getFile(String groupId) {
+		return new File(dir, groupId.replaceAll("[^\\w@.-]", "_") + ".idx");
+	}
+}
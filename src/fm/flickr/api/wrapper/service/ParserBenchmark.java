@@ -0,0 +1,146 @@
+package fm.flickr.api.wrapper.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import fm.flickr.api.wrapper.service.param.PhotoItem;
+import fm.flickr.api.wrapper.service.param.PhotoItemsSet;
+
+/**
+ * Compare the parsing of a page of photos by the streaming parser ({@link FlickrResponseParser#parsePhotos(byte[])})
+ * and by the former DOM path: the whole response parsed into a Document, then each &lt;photo&gt; element turned into
+ * a PhotoItem. Both must return the same photos. The time and the memory allocated per page are printed for each.
+ * <p>
+ * Usage: ParserBenchmark [nb of iterations] [file]. The file contains a response body, by default a canned
+ * flickr.groups.pools.getPhotos page of 500 photos is used.
+ * </p>
+ *
+ * @author fmichel
+ */
+public class ParserBenchmark
+{
+	private static final int NB_PHOTOS = 500;
+
+	public static void main(String[] args) throws Exception {
+		int nbIterations = (args.length > 0) ? Integer.valueOf(args[0]) : 2000;
+		byte[] body = (args.length > 1) ? Files.readAllBytes(new File(args[1]).toPath()) : makePoolPage();
+
+		// Check that both paths return the same photos
+		List<PhotoItem> stax = FlickrResponseParser.parsePhotos(body).getPhotosList();
+		List<PhotoItem> dom = parseWithDom(body).getPhotosList();
+		if (stax.size() != dom.size())
+			throw new IllegalStateException("StAX returned " + stax.size() + " photos, DOM " + dom.size());
+		for (int i = 0; i < stax.size(); i++)
+			if (!stax.get(i).getPhotoId().equals(dom.get(i).getPhotoId()) || !stax.get(i).getBigUrl().equals(dom.get(i).getBigUrl()) || !stax.get(i).getDateAdded().equals(dom.get(i).getDateAdded()))
+				throw new IllegalStateException("Photo #" + i + " differs");
+		System.out.println(body.length + " bytes, " + stax.size() + " photos, " + nbIterations + " iterations");
+
+		// Warm up, then measure
+		for (int round = 0; round < 2; round++) {
+			boolean print = (round == 1);
+			run("StAX", body, nbIterations, true, print);
+			run("DOM ", body, nbIterations, false, print);
+		}
+	}
+
+	/**
+	 * Parse the body several times and print the average time and memory allocated per parsing
+	 */
+	private static void run(String name, byte[] body, int nbIterations, boolean stax, boolean print) throws Exception {
+		ThreadMXBean mxBean = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean allocBean = (mxBean instanceof com.sun.management.ThreadMXBean) ? (com.sun.management.ThreadMXBean) mxBean : null;
+		long threadId = Thread.currentThread().getId();
+
+		long allocStart = (allocBean != null) ? allocBean.getThreadAllocatedBytes(threadId) : 0;
+		long start = System.nanoTime();
+		int nbPhotos = 0;
+		for (int i = 0; i < nbIterations; i++) {
+			PhotoItemsSet photos = stax ? FlickrResponseParser.parsePhotos(body) : parseWithDom(body);
+			nbPhotos += photos.size();
+		}
+		long timeNs = System.nanoTime() - start;
+		long alloc = (allocBean != null) ? allocBean.getThreadAllocatedBytes(threadId) - allocStart : -1;
+
+		if (print)
+			System.out.println(name + ": " + String.format("%.1f", timeNs / 1e3 / nbIterations) + " us/page, "
+					+ ((alloc < 0) ? "allocation unknown" : (alloc / nbIterations / 1024) + " KB allocated/page") + " (" + nbPhotos / nbIterations + " photos)");
+	}
+
+	/**
+	 * Former DOM path: parse the whole response, check its status, then build a PhotoItem from each &lt;photo&gt;
+	 */
+	private static PhotoItemsSet parseWithDom(byte[] body) throws Exception {
+		DocumentBuilder db = documentBuilder.get();
+		db.reset();
+		Document xmlResp = db.parse(new ByteArrayInputStream(body));
+		String error = FlickrUtil.checkFlickrResponseStatus(xmlResp);
+		if (error != null)
+			throw new IOException(error);
+
+		Element photos = (Element) xmlResp.getElementsByTagName("photos").item(0);
+		int maxPages = Integer.valueOf(photos.getAttribute("pages"));
+		int pageNumber = Integer.valueOf(photos.getAttribute("page"));
+
+		NodeList photosList = xmlResp.getElementsByTagName("photo");
+		ArrayList<PhotoItem> items = new ArrayList<PhotoItem>();
+		for (int i = 0; i < photosList.getLength(); i++) {
+			Element photoElement = (Element) photosList.item(i);
+			String id = photoElement.getAttribute("id");
+			String url = "http://farm" + photoElement.getAttribute("farm") + ".static.flickr.com/" + photoElement.getAttribute("server") + "/" + id + "_" + photoElement.getAttribute("secret");
+			PhotoItem photoItem = new PhotoItem();
+			photoItem.setPhotoId(id);
+			photoItem.setInterestingnessRank(i + 1);
+			photoItem.setSquareUrl(url + "_s.jpg");
+			photoItem.setMediumUrl(url + ".jpg");
+			photoItem.setBigUrl(url + "_b.jpg");
+			photoItem.setTitle(photoElement.getAttribute("title"));
+			photoItem.setUserId(photoElement.getAttribute("owner"));
+			photoItem.setDateAdded(photoElement.getAttribute("dateadded"));
+			items.add(photoItem);
+		}
+		return new PhotoItemsSet(items, pageNumber, maxPages);
+	}
+
+	private static ThreadLocal<DocumentBuilder> documentBuilder = new ThreadLocal<DocumentBuilder>() {
+		protected DocumentBuilder initialValue() {
+			try {
+				return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	/**
+	 * @return a response of flickr.groups.pools.getPhotos with 500 photos
+	 */
+	private static byte[] makePoolPage() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n<rsp stat=\"ok\">\n");
+		sb.append("<photos page=\"3\" pages=\"2418\" perpage=\"" + NB_PHOTOS + "\" total=\"1208765\">\n");
+		long dateAdded = 1570000000L;
+		for (int i = 0; i < NB_PHOTOS; i++) {
+			long id = 48800000000L + i * 7919;
+			dateAdded -= 37 + (i % 11) * 13;
+			sb.append("\t<photo id=\"" + id + "\" owner=\"" + (12345678 + i % 97) + "@N0" + (i % 8) + "\" secret=\"" + Long.toHexString(id * 31).substring(0, 10)
+					+ "\" server=\"" + (65535 - i % 40) + "\" farm=\"66\" title=\"Sunset over the lake #" + i + " &amp; friends\" ispublic=\"1\" isfriend=\"0\" isfamily=\"0\" ownername=\"photographer "
+					+ (i % 97) + "\" dateadded=\"" + dateAdded + "\" />\n");
+		}
+		sb.append("</photos>\n</rsp>\n");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
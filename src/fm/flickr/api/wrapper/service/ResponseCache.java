@@ -0,0 +1,287 @@
+package fm.flickr.api.wrapper.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+
+import fm.util.Config;
+
+/**
+ * Content-addressed disk cache of the responses of idempotent Flickr API methods.
+ * <p>
+ * A response is stored in a file named after the hash of the request parameters (the formatted, possibly signed,
+ * parameters of the url) and the time it expires. It is kept for the time to live of the Flickr method, given in
+ * seconds by property 'fm.flickr.api.wrapper.cache.ttl.&lt;method&gt;', e.g.
+ * fm.flickr.api.wrapper.cache.ttl.flickr.photos.getInfo. Methods with no time to live are never cached.
+ * </p>
+ * <p>
+ * The cache is enabled when property 'fm.flickr.api.wrapper.cache.dir' is set. Its size on disk is bounded by
+ * 'fm.flickr.api.wrapper.cache.max_bytes': the least recently used responses are evicted first.
+ * </p>
+ * Only responses with status ok are cached.
+ *
+ * @author fmichel
+ */
+public class ResponseCache
+{
+	private static Logger logger = Logger.getLogger(ResponseCache.class.getName());
+
+	private static Configuration config = Config.getConfiguration();
+
+	private static final String SUFFIX = ".xml";
+
+	/** Cache directory, null if the cache is disabled */
+	private static File dir = null;
+
+	private static long maxBytes;
+
+	/** Size of the files currently in the cache */
+	private static long totalBytes = 0;
+
+	/** Entries of the cache by hash of the request, in the order of access (least recently used first) */
+	private static LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(1024, 0.75f, true);
+
+	private static AtomicLong nbHits = new AtomicLong(0);
+
+	private static AtomicLong nbMisses = new AtomicLong(0);
+
+	/**
+	 * A response stored in the cache
+	 */
+	private static class Entry
+	{
+		File file;
+
+		long size;
+
+		/** Time the entry expires, in milliseconds since the epoch */
+		long expires;
+
+		Entry(File file, long size, long expires) {
+			this.file = file;
+			this.size = size;
+			this.expires = expires;
+		}
+	}
+
+	static {
+		String dirName = config.getString("fm.flickr.api.wrapper.cache.dir", null);
+		if (dirName != null && !dirName.isEmpty()) {
+			dir = new File(dirName);
+			dir.mkdirs();
+			maxBytes = config.getLong("fm.flickr.api.wrapper.cache.max_bytes", 100000000L);
+			loadIndex();
+		}
+	}
+
+	/**
+	 * Rebuild the index of the cache from the files of the cache directory, the least recently modified first
+	 */
+	private static void loadIndex() {
+		File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File f1, File f2) {
+				return Long.compare(f1.lastModified(), f2.lastModified());
+			}
+		});
+
+		long now = System.currentTimeMillis();
+		for (File file : files) {
+			String name = file.getName();
+			int sep = name.indexOf('-');
+			if (!name.endsWith(SUFFIX) || sep < 0)
+				continue;
+			try {
+				long expires = Long.parseLong(name.substring(sep + 1, name.length() - SUFFIX.length()));
+				if (expires <= now)
+					file.delete();
+				else {
+					entries.put(name.substring(0, sep), new Entry(file, file.length(), expires));
+					totalBytes += file.length();
+				}
+			} catch (NumberFormatException e) {
+				logger.warn("Ignoring unexpected file in cache: " + name);
+			}
+		}
+		evict();
+		logger.info("Response cache: " + entries.size() + " entries, " + totalBytes + " bytes in " + dir.getAbsolutePath());
+	}
+
+	/**
+	 * Get the response of a request from the cache
+	 *
+	 * @param urlStr service url including parameters
+	 * @return the response body, or null if the method is not cached or the response is not in the cache
+	 */
+	public static byte[] get(String urlStr) {
+		if (dir == null || getTtl(urlStr) <= 0)
+			return null;
+
+		String key = getKey(urlStr);
+		Entry entry;
+		synchronized (ResponseCache.class) {
+			entry = entries.get(key);
+			if (entry != null && entry.expires <= System.currentTimeMillis()) {
+				remove(key);
+				entry = null;
+			}
+		}
+
+		if (entry != null) {
+			try {
+				byte[] body = Files.readAllBytes(entry.file.toPath());
+				nbHits.incrementAndGet();
+				logger.trace("Cache hit: " + urlStr);
+				return body;
+			} catch (IOException e) {
+				// The file may have been evicted in the meantime
+				logger.debug("Cannot read cache file " + entry.file + ": " + e.toString());
+			}
+		}
+		nbMisses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Store the response of a request, if the method is cached and the response status is ok
+	 *
+	 * @param urlStr service url including parameters
+	 * @param body response body
+	 */
+	public static void put(String urlStr, byte[] body) {
+		if (dir == null)
+			return;
+		long ttl = getTtl(urlStr);
+		if (ttl <= 0 || !isStatusOk(body))
+			return;
+
+		String key = getKey(urlStr);
+		long expires = System.currentTimeMillis() + ttl * 1000;
+		File file = new File(dir, key + "-" + expires + SUFFIX);
+		try {
+			// Write to a temporary file first, so that a partially written response is never read
+			File tmp = File.createTempFile(key, ".tmp", dir);
+			FileOutputStream fos = new FileOutputStream(tmp);
+			try {
+				fos.write(body);
+			} finally {
+				fos.close();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			synchronized (ResponseCache.class) {
+				remove(key);
+				entries.put(key, new Entry(file, body.length, expires));
+				totalBytes += body.length;
+				evict();
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot write cache file " + file + ": " + e.toString());
+		}
+	}
+
+	/**
+	 * @return number of requests answered from the cache
+	 */
+	public static long getHits() {
+		return nbHits.get();
+	}
+
+	/**
+	 * @return number of requests of cached methods that were not found in the cache
+	 */
+	public static long getMisses() {
+		return nbMisses.get();
+	}
+
+	/**
+	 * Log the hit and miss counters of the cache
+	 */
+	public static void logStats() {
+		if (dir != null)
+			logger.info("Response cache: " + getHits() + " hits, " + getMisses() + " misses, " + entries.size() + " entries, " + totalBytes + " bytes");
+	}
+
+	/**
+	 * Remove the least recently used entries until the size of the cache is under the max size
+	 */
+	private static void evict() {
+		Iterator<Map.Entry<String, Entry>> iter = entries.entrySet().iterator();
+		while (totalBytes > maxBytes && iter.hasNext()) {
+			Entry entry = iter.next().getValue();
+			iter.remove();
+			totalBytes -= entry.size;
+			entry.file.delete();
+		}
+	}
+
+	private static void remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			totalBytes -= entry.size;
+			entry.file.delete();
+		}
+	}
+
+	/**
+	 * @return time to live in seconds of the responses of the method called in the url, 0 if not cached
+	 */
+	private static long getTtl(String urlStr) {
+		String method = getParam(urlStr, "method");
+		if (method == null)
+			return 0;
+		return config.getLong("fm.flickr.api.wrapper.cache.ttl." + method, 0);
+	}
+
+	/**
+	 * Value of a parameter of a url, not decoded
+	 */
+	private static String getParam(String urlStr, String name) {
+		int start = urlStr.indexOf(name + "=");
+		while (start > 0 && urlStr.charAt(start - 1) != '?' && urlStr.charAt(start - 1) != '&')
+			start = urlStr.indexOf(name + "=", start + 1);
+		if (start < 0)
+			return null;
+		start += name.length() + 1;
+		int end = urlStr.indexOf('&', start);
+		return (end < 0) ? urlStr.substring(start) : urlStr.substring(start, end);
+	}
+
+	/**
+	 * Compute the key of a request: the SHA-1 hash of the formatted parameters of the url
+	 */
+	private static String getKey(String urlStr) {
+		String params = urlStr.substring(urlStr.indexOf('?') + 1);
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			return FlickrUtil.byteToHexString(md.digest(params.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			logger.error("Error getting MessageDigest", e);
+			return Integer.toHexString(params.hashCode());
+		}
+	}
+
+	/**
+	 * Check the status of the response without parsing it: the rsp element comes first in the response
+	 */
+	private static boolean isStatusOk(byte[] body) {
+		String head = new String(body, 0, Math.min(body.length, 256), StandardCharsets.UTF_8);
+		return head.contains("stat=\"ok\"");
+	}
+}
@@ -0,0 +1,106 @@
+package fm.flickr.api.wrapper.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+
+import fm.flickr.api.wrapper.service.param.UserInfo;
+import fm.util.Config;
+
+/**
+ * In-memory cache of user information by NSID, shared by all threads and all the tools that call
+ * {@link FlickrService#getUserInfo(String)}. Owners of explored photos come back very often, while getting the
+ * information about a user costs 3 requests.
+ * <p>
+ * The number of photos, contacts and followers of a user change over time: an entry expires after
+ * 'fm.flickr.api.wrapper.userinfo.cache.ttl' seconds. The cache holds at most
+ * 'fm.flickr.api.wrapper.userinfo.cache.size' users, the least recently used are evicted first.
+ * </p>
+ * Cached instances are shared and must not be modified.
+ *
+ * @author fmichel
+ */
+public class UserInfoCache
+{
+	private static Logger logger = Logger.getLogger(UserInfoCache.class.getName());
+
+	private static Configuration config = Config.getConfiguration();
+
+	private static final int MAX_SIZE = config.getInt("fm.flickr.api.wrapper.userinfo.cache.size", 10000);
+
+	private static final long TTL_MS = config.getLong("fm.flickr.api.wrapper.userinfo.cache.ttl", 86400) * 1000;
+
+	/**
+	 * A user and the time it was retrieved
+	 */
+	private static class Entry
+	{
+		UserInfo user;
+
+		long time;
+
+		Entry(UserInfo user, long time) {
+			this.user = user;
+			this.time = time;
+		}
+	}
+
+	/** Users by NSID, in the order of access (least recently used first) */
+	private static LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(1024, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+			return size() > MAX_SIZE;
+		}
+	};
+
+	private static long nbHits = 0;
+
+	private static long nbMisses = 0;
+
+	/**
+	 * Get a user from the cache
+	 *
+	 * @param userId NSID of the user
+	 * @return the user info, or null if the user is not in the cache or the entry has expired
+	 */
+	public static synchronized UserInfo get(String userId) {
+		if (MAX_SIZE <= 0)
+			return null;
+
+		Entry entry = entries.get(userId);
+		if (entry != null && System.currentTimeMillis() - entry.time > TTL_MS) {
+			entries.remove(userId);
+			entry = null;
+		}
+		if (entry == null) {
+			nbMisses++;
+			return null;
+		}
+
+		nbHits++;
+		if ((nbHits + nbMisses) % 1000 == 0)
+			logger.debug("User info cache: " + nbHits + " hits, " + nbMisses + " misses, " + entries.size() + " users");
+		return entry.user;
+	}
+
+	/**
+	 * Add or replace a user in the cache
+	 *
+	 * @param user user info, not null
+	 */
+	public static synchronized void put(UserInfo user) {
+		if (MAX_SIZE > 0)
+			entries.put(user.getUserId(), new Entry(user, System.currentTimeMillis()));
+	}
+
+	public static synchronized long getHits() {
+		return nbHits;
+	}
+
+	public static synchronized long getMisses() {
+		return nbMisses;
+	}
+}
@@ -32,6 +32,9 @@ public class PhotoItem implements Serializable
 	/** User identifier */
 	protected String userId;
 
+	/** Unix timestamp of the date the photo was added to a group, only when the photo was obtained from a group pool */
+	protected String dateAdded;
+
 	public PhotoItem() {
 	}
 
@@ -83,6 +86,14 @@ public class PhotoItem implements Serializable
 		this.userId = userId;
 	}
 
+	public String getDateAdded() {
+		return dateAdded;
+	}
+
+	public void setDateAdded(String dateAdded) {
+		this.dateAdded = dateAdded;
+	}
+
 	public int getInterestingnessRank() {
 		return interestingnessRank;
 	}
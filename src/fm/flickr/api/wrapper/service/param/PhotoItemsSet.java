@@ -5,7 +5,7 @@ import java.util.ArrayList;
 
 /**
  * Implement a set of photo items and stores the page number and max pages 
- * that this set corresponds to
+ * that this set corresponds to, and the total number of photos when known
  * 
  * @author fmichel
  */
@@ -19,6 +19,9 @@ public class PhotoItemsSet implements Serializable
 
 	private int maxPage;
 
+	/** Total number of photos over all the pages, -1 if unknown */
+	private int total = -1;
+
 	public PhotoItemsSet() {
 		photosList = null;
 		pageNumber = 0;
@@ -54,6 +57,14 @@ public class PhotoItemsSet implements Serializable
 	public void setMaxPage(int maxPage) {
 		this.maxPage = maxPage;
 	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public void setTotal(int total) {
+		this.total = total;
+	}
 	
 	public int size() {
 		return photosList.size();
@@ -0,0 +1,97 @@
+package fm.flickr.api.wrapper.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+
+import fm.flickr.api.wrapper.util.HttpStatusException;
+import fm.flickr.api.wrapper.util.ServiceException;
+import fm.util.Config;
+
+/**
+ * Transport based on the java.net.http client: one client is shared by all threads, it keeps connections
+ * alive and negotiates HTTP/2 with the server when possible, so that concurrent requests are multiplexed
+ * on the same connection. Responses are requested gzip-compressed.
+ *
+ * @author fmichel
+ */
+public class HttpClientTransport implements HttpTransport
+{
+	private static Logger logger = Logger.getLogger(HttpClientTransport.class.getName());
+
+	private static Configuration config = Config.getConfiguration();
+
+	private final HttpClient client;
+
+	public HttpClientTransport() {
+		client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(Duration.ofMillis(config.getInt("fm.flickr.api.wrapper.connection_timeout")))
+				.build();
+	}
+
+	@Override
+	public byte[] get(String url) throws IOException, ServiceException {
+		try {
+			HttpResponse<byte[]> response = client.send(makeRequest(url), HttpResponse.BodyHandlers.ofByteArray());
+			return readBody(response);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the response", e);
+		}
+	}
+
+	@Override
+	public CompletableFuture<byte[]> getAsync(String url) {
+		return client.sendAsync(makeRequest(url), HttpResponse.BodyHandlers.ofByteArray()).thenApply(new Function<HttpResponse<byte[]>, byte[]>() {
+			public byte[] apply(HttpResponse<byte[]> response) {
+				try {
+					return readBody(response);
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				} catch (ServiceException e) {
+					throw new CompletionException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Build a GET request asking for a compressed response
+	 */
+	private HttpRequest makeRequest(String url) {
+		return HttpRequest.newBuilder(URI.create(url))
+				.timeout(Duration.ofMillis(config.getInt("fm.flickr.api.wrapper.read_timeout")))
+				.header("Accept-Encoding", "gzip")
+				.GET()
+				.build();
+	}
+
+	/**
+	 * Check the http status code of the response and uncompress the body if needed
+	 */
+	private byte[] readBody(HttpResponse<byte[]> response) throws IOException, ServiceException {
+		if (response.statusCode() != 200) {
+			logger.error("Request failed, HTTP response: " + response.statusCode());
+			throw new HttpStatusException(response.statusCode(), "Request failed, HTTP response: " + response.statusCode());
+		}
+
+		String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+		if ("gzip".equalsIgnoreCase(encoding))
+			return new GZIPInputStream(new ByteArrayInputStream(response.body())).readAllBytes();
+		else
+			return response.body();
+	}
+}
@@ -0,0 +1,36 @@
+package fm.flickr.api.wrapper.transport;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import fm.flickr.api.wrapper.util.HttpStatusException;
+import fm.flickr.api.wrapper.util.ServiceException;
+
+/**
+ * Transport used to send http GET requests to the Flickr services and read the raw response body.
+ * Implementations are shared by all threads and must be thread-safe. They are expected to reuse connections
+ * and to ask for compressed responses: the body returned is always uncompressed.
+ *
+ * @author fmichel
+ */
+public interface HttpTransport
+{
+	/**
+	 * Send a GET request and wait for the response
+	 *
+	 * @param url service url including parameters
+	 * @return the uncompressed response body
+	 * @throws IOException in case of connection or read error. The request may be tried again.
+	 * @throws HttpStatusException if the server answered with an http status other than 200
+	 */
+	byte[] get(String url) throws IOException, ServiceException;
+
+	/**
+	 * Send a GET request without waiting for the response
+	 *
+	 * @param url service url including parameters
+	 * @return a future completed with the uncompressed response body, or completed exceptionally
+	 * with an IOException or an HttpStatusException as in {@link #get(String)}
+	 */
+	CompletableFuture<byte[]> getAsync(String url);
+}
@@ -0,0 +1,94 @@
+package fm.flickr.api.wrapper.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+
+import fm.flickr.api.wrapper.service.FlickrUtil;
+import fm.flickr.api.wrapper.util.ServiceException;
+import fm.util.Config;
+
+/**
+ * Check the http transports against the Flickr services, or against a local stub server set in property
+ * 'fm.flickr.api.wrapper.services_url'. With each transport, the requests are sent one after the other with
+ * FlickrUtil.launchRequest, then all at once with FlickrUtil.launchRequestAsync: all the responses must have
+ * status ok.
+ * <p>
+ * Usage: TransportCheck [method] [nb of requests]. The method defaults to flickr.test.echo, each request has a
+ * distinct 'check' parameter so that no response is served from the disk cache.
+ * </p>
+ *
+ * @author fmichel
+ */
+public class TransportCheck
+{
+	private static Logger logger = Logger.getLogger(TransportCheck.class.getName());
+
+	private static Configuration config = Config.getConfiguration();
+
+	private final static String FLICKR_SERVICES_URL = config.getString("fm.flickr.api.wrapper.services_url", "https://api.flickr.com/services/rest/?");
+
+	public static void main(String[] args) {
+		String method = (args.length > 0) ? args[0] : "flickr.test.echo";
+		int nbRequests = (args.length > 1) ? Integer.valueOf(args[1]) : 10;
+
+		int nbFailed = 0;
+		HttpTransport[] transports = { new HttpClientTransport(), new UrlConnectionTransport() };
+		for (HttpTransport transport : transports) {
+			String name = transport.getClass().getSimpleName();
+			FlickrUtil.setTransport(transport);
+
+			// Blocking requests
+			long start = System.currentTimeMillis();
+			int failed = 0;
+			for (int i = 0; i < nbRequests; i++) {
+				try {
+					FlickrUtil.launchRequest(getUrl(method, name + "-sync-" + i));
+				} catch (ServiceException e) {
+					logger.warn(name + ": request " + i + " failed: " + e.toString());
+					failed++;
+				}
+			}
+			System.out.println(name + " launchRequest: " + (nbRequests - failed) + "/" + nbRequests + " ok in " + (System.currentTimeMillis() - start) + " ms");
+			nbFailed += failed;
+
+			// Asynchronous requests, all sent before waiting for the responses
+			start = System.currentTimeMillis();
+			failed = 0;
+			List<CompletableFuture<?>> futures = new ArrayList<CompletableFuture<?>>();
+			for (int i = 0; i < nbRequests; i++)
+				futures.add(FlickrUtil.launchRequestAsync(getUrl(method, name + "-async-" + i)));
+			for (int i = 0; i < nbRequests; i++) {
+				try {
+					futures.get(i).get();
+				} catch (ExecutionException e) {
+					logger.warn(name + ": async request " + i + " failed: " + e.getCause());
+					failed++;
+				} catch (InterruptedException e) {
+					logger.warn("Unepected interruption: " + e.toString());
+					Thread.currentThread().interrupt();
+					failed++;
+				}
+			}
+			System.out.println(name + " launchRequestAsync: " + (nbRequests - failed) + "/" + nbRequests + " ok in " + (System.currentTimeMillis() - start) + " ms");
+			nbFailed += failed;
+		}
+		System.exit(nbFailed == 0 ? 0 : 1);
+	}
+
+	/**
+	 * @return url of a request with the given method
+	 */
+	private static String getUrl(String method, String check) {
+		TreeMap<String, String> listParams = new TreeMap<String, String>();
+		listParams.put("api_key", config.getString("fm.flickr.api.wrapper.flickr_apikey"));
+		listParams.put("method", method);
+		listParams.put("check", check);
+		return FLICKR_SERVICES_URL + FlickrUtil.formatUrlParams(listParams);
+	}
+}
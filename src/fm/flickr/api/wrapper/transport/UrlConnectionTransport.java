@@ -0,0 +1,101 @@
+package fm.flickr.api.wrapper.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+
+import fm.flickr.api.wrapper.util.HttpStatusException;
+import fm.flickr.api.wrapper.util.ServiceException;
+import fm.util.Config;
+
+/**
+ * Http/1.1 transport based on HttpURLConnection. Connections are kept alive by the JVM as long as
+ * response bodies are fully read and closed, which this class always does, including on errors.
+ * Responses are requested gzip-compressed.
+ *
+ * Asynchronous requests are run on a pool of daemon threads.
+ *
+ * @author fmichel
+ */
+public class UrlConnectionTransport implements HttpTransport
+{
+	private static Logger logger = Logger.getLogger(UrlConnectionTransport.class.getName());
+
+	private static Configuration config = Config.getConfiguration();
+
+	/** Threads running the asynchronous requests */
+	private final ExecutorService executor;
+
+	public UrlConnectionTransport() {
+		// Max number of idle connections kept alive per host
+		System.setProperty("http.maxConnections", config.getString("fm.flickr.api.wrapper.max_connections", "20"));
+
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "flickr-http");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	@Override
+	public byte[] get(String url) throws IOException, ServiceException {
+		HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+		con.setRequestMethod("GET");
+		con.setConnectTimeout(config.getInt("fm.flickr.api.wrapper.connection_timeout"));
+		con.setReadTimeout(config.getInt("fm.flickr.api.wrapper.read_timeout"));
+		con.setRequestProperty("Accept-Encoding", "gzip");
+		con.setRequestProperty("Connection", "keep-alive");
+
+		// Run request and check HTTP status code
+		con.connect();
+		int status = con.getResponseCode();
+		if (status != 200) {
+			// Consume the error body so that the connection can be reused
+			InputStream err = con.getErrorStream();
+			if (err != null) {
+				err.readAllBytes();
+				err.close();
+			}
+			logger.error("Request failed, HTTP response: " + status + " " + con.getResponseMessage());
+			throw new HttpStatusException(status, "Request failed, HTTP response: " + status + " " + con.getResponseMessage());
+		}
+
+		InputStream in = con.getInputStream();
+		try {
+			if ("gzip".equalsIgnoreCase(con.getContentEncoding()))
+				return new GZIPInputStream(in).readAllBytes();
+			else
+				return in.readAllBytes();
+		} finally {
+			in.close();
+		}
+	}
+
+	@Override
+	public CompletableFuture<byte[]> getAsync(final String url) {
+		return CompletableFuture.supplyAsync(new Supplier<byte[]>() {
+			public byte[] get() {
+				try {
+					return UrlConnectionTransport.this.get(url);
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				} catch (ServiceException e) {
+					throw new CompletionException(e);
+				}
+			}
+		}, executor);
+	}
+}
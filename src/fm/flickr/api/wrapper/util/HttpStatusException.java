@@ -0,0 +1,30 @@
+package fm.flickr.api.wrapper.util;
+
+/**
+ * Exception raised when the server answers a request with an http status other than 200
+ * 
+ * @author fmichel
+ */
+public class HttpStatusException extends ServiceException
+{
+	private static final long serialVersionUID = -6081569327412736417L;
+
+	/** Http status code of the response */
+	private int status;
+
+	public HttpStatusException(int status, String message) {
+		super(message);
+		this.status = status;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return true if the status means that the server is overloaded or unavailable: 429 (too many requests) or 5xx
+	 */
+	public boolean isThrottling() {
+		return status == 429 || status >= 500;
+	}
+}
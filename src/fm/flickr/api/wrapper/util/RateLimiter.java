@@ -0,0 +1,238 @@
+package fm.flickr.api.wrapper.util;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+
+import fm.util.Config;
+
+/**
+ * Central rate limiter of the requests sent to Flickr, shared by all the threads that call the Flickr API.
+ * <p>
+ * Each API key has its own token bucket: tokens are refilled at the current rate of the key and each request
+ * consumes one token, the bucket can hold up to 'fm.flickr.api.wrapper.burst' tokens. The rate adapts to the
+ * answers of Flickr (additive increase, multiplicative decrease):
+ * <ul>
+ * <li>each successful request increases the rate a little, up to 'fm.flickr.api.wrapper.max_requests_per_sec'
+ * (0 = no limit);</li>
+ * <li>an http 429 (too many requests) halves the rate of the key and pauses it;</li>
+ * <li>an http 5xx or one of the Flickr error codes listed in 'fm.flickr.api.wrapper.backoff.error_codes' means
+ * that the service itself is unavailable: all keys are slowed down and paused.</li>
+ * </ul>
+ * Pauses grow exponentially with the number of consecutive errors, from 'fm.flickr.api.wrapper.backoff.base_ms'
+ * up to 'fm.flickr.api.wrapper.backoff.max_ms'. The bucket does not fill up during a pause: the requests waiting for
+ * the end of the pause are spaced at the current rate.
+ * </p>
+ *
+ * @author fmichel
+ */
+public class RateLimiter
+{
+	private static Logger logger = Logger.getLogger(RateLimiter.class.getName());
+
+	private static Configuration config = Config.getConfiguration();
+
+	/** Max number of requests per second and per key, 0 if no limit */
+	private static final double MAX_RATE = config.getDouble("fm.flickr.api.wrapper.max_requests_per_sec", 0);
+
+	/** Rate under which the adaptive backoff never goes */
+	private static final double MIN_RATE = Math.min(MAX_RATE, config.getDouble("fm.flickr.api.wrapper.min_requests_per_sec", 0.5));
+
+	/** Max number of tokens in a bucket */
+	private static final double BURST = Math.max(1, config.getDouble("fm.flickr.api.wrapper.burst", 1));
+
+	private static final long BACKOFF_BASE_MS = config.getLong("fm.flickr.api.wrapper.backoff.base_ms", 2000);
+
+	private static final long BACKOFF_MAX_MS = config.getLong("fm.flickr.api.wrapper.backoff.max_ms", 300000);
+
+	/** Flickr error codes meaning that the service is unavailable */
+	private static final List<?> ERROR_CODES = config.getList("fm.flickr.api.wrapper.backoff.error_codes");
+
+	/**
+	 * Token bucket of one API key
+	 */
+	private static class Bucket
+	{
+		/** Current rate in requests per second */
+		double rate = MAX_RATE;
+
+		/** Tokens available, may be negative when requests are waiting for their turn */
+		double tokens = BURST;
+
+		/** Last time the tokens were refilled (System.nanoTime() reference) */
+		long lastRefill = System.nanoTime();
+
+		/** No request may start before that time (System.nanoTime() reference) */
+		long pausedUntil = 0;
+
+		/** Number of errors since the last successful request */
+		int nbErrors = 0;
+	}
+
+	/** Buckets by API key */
+	private static HashMap<String, Bucket> buckets = new HashMap<String, Bucket>();
+
+	/** No request may start before that time, whatever the key (System.nanoTime() reference) */
+	private static long globalPausedUntil = 0;
+
+	/** Number of consecutive "service unavailable" errors */
+	private static int nbGlobalErrors = 0;
+
+	static {
+		logger.debug("Requests budget: " + (MAX_RATE > 0 ? MAX_RATE + " requests/s per key, burst " + BURST : "unlimited"));
+	}
+
+	/**
+	 * Block the calling thread until it is allowed to run a request with the given API key
+	 *
+	 * @param apiKey the API key used in the request, may be null
+	 */
+	public static void acquire(String apiKey) {
+		sleepNs(reserve(apiKey));
+	}
+
+	/**
+	 * Reserve the right to run a request with the given API key, without blocking the calling thread: the request
+	 * must then be sent after the delay returned, e.g. by an asynchronous task scheduled with that delay
+	 *
+	 * @param apiKey the API key used in the request, may be null
+	 * @return delay in nanoseconds before the request may be sent, 0 or less if it may be sent right away
+	 */
+	public static long reserve(String apiKey) {
+		synchronized (RateLimiter.class) {
+			Bucket bucket = getBucket(apiKey);
+			long now = System.nanoTime();
+			long start = Math.max(now, Math.max(bucket.pausedUntil, globalPausedUntil));
+
+			if (MAX_RATE > 0) {
+				// Refill the bucket up to the time the request may start, i.e. the end of the pause if any, then take a
+				// token. If there is no token left, wait for the next one: requests queued during a pause are thus
+				// spaced at the current rate after the pause, instead of all starting when it ends
+				if (start > bucket.lastRefill) {
+					bucket.tokens = Math.min(BURST, bucket.tokens + (start - bucket.lastRefill) * bucket.rate / 1e9);
+					bucket.lastRefill = start;
+				}
+				bucket.tokens -= 1;
+				if (bucket.tokens < 0)
+					start = bucket.lastRefill + (long) (-bucket.tokens * 1e9 / bucket.rate);
+			}
+			return start - now;
+		}
+	}
+
+	/**
+	 * Notify a successful request: the rate of the key is slowly increased back to its maximum
+	 *
+	 * @param apiKey the API key used in the request, may be null
+	 */
+	public static synchronized void success(String apiKey) {
+		Bucket bucket = getBucket(apiKey);
+		bucket.nbErrors = 0;
+		nbGlobalErrors = 0;
+		if (MAX_RATE > 0 && bucket.rate < MAX_RATE)
+			bucket.rate = Math.min(MAX_RATE, bucket.rate + MAX_RATE / 100);
+	}
+
+	/**
+	 * Notify a request rejected because of the http status of the response
+	 *
+	 * @param apiKey the API key used in the request, may be null
+	 * @param status http status code
+	 */
+	public static synchronized void httpError(String apiKey, int status) {
+		if (status == 429) {
+			Bucket bucket = getBucket(apiKey);
+			bucket.nbErrors++;
+			bucket.rate = Math.max(MIN_RATE, bucket.rate / 2);
+			long pauseMs = getBackoffMs(bucket.nbErrors);
+			bucket.pausedUntil = System.nanoTime() + pauseMs * 1000000;
+			drain(bucket, bucket.pausedUntil);
+			logger.warn("Too many requests: slowing down to " + String.format("%.2f", bucket.rate) + " requests/s, pausing " + pauseMs + " ms");
+		} else if (status >= 500)
+			serviceUnavailable("http status " + status);
+	}
+
+	/**
+	 * Notify an error returned by Flickr. Only the codes listed in 'fm.flickr.api.wrapper.backoff.error_codes' are
+	 * considered as a sign that the service is overloaded, others are ignored.
+	 *
+	 * @param code the Flickr error code
+	 */
+	public static synchronized void flickrError(String code) {
+		if (ERROR_CODES.contains(code))
+			serviceUnavailable("Flickr error code " + code);
+	}
+
+	/**
+	 * Block the calling thread before a new attempt of a request that failed, the delay grows exponentially with the
+	 * number of attempts
+	 *
+	 * @param attempt number of attempts already done (1 after the first failure)
+	 */
+	public static void waitBeforeRetry(int attempt) {
+		long pauseMs = getRetryDelayMs(attempt);
+		logger.debug("Waiting " + pauseMs + " ms before retry");
+		sleepNs(pauseMs * 1000000);
+	}
+
+	/**
+	 * Delay before a new attempt of a request that failed, for callers that must not block while waiting for it
+	 *
+	 * @param attempt number of attempts already done (1 after the first failure)
+	 * @return delay in milliseconds, growing exponentially with the number of attempts
+	 */
+	public static long getRetryDelayMs(int attempt) {
+		return getBackoffMs(attempt);
+	}
+
+	/**
+	 * Slow down all the keys and pause all requests
+	 */
+	private static void serviceUnavailable(String cause) {
+		nbGlobalErrors++;
+		for (Bucket bucket : buckets.values())
+			bucket.rate = Math.max(MIN_RATE, bucket.rate / 2);
+		long pauseMs = getBackoffMs(nbGlobalErrors);
+		globalPausedUntil = System.nanoTime() + pauseMs * 1000000;
+		for (Bucket bucket : buckets.values())
+			drain(bucket, globalPausedUntil);
+		logger.warn("Service unavailable (" + cause + "): pausing all requests " + pauseMs + " ms");
+	}
+
+	/**
+	 * Empty a bucket until the end of a pause: no token is gained during the pause, so that the requests waiting for
+	 * it to end do not start in a burst but one after the other at the current rate
+	 */
+	private static void drain(Bucket bucket, long pausedUntil) {
+		bucket.tokens = Math.min(1, bucket.tokens);
+		bucket.lastRefill = Math.max(bucket.lastRefill, pausedUntil);
+	}
+
+	private static long getBackoffMs(int nbErrors) {
+		long pauseMs = BACKOFF_BASE_MS << Math.min(20, Math.max(0, nbErrors - 1));
+		return Math.min(BACKOFF_MAX_MS, pauseMs);
+	}
+
+	private static Bucket getBucket(String apiKey) {
+		String key = (apiKey == null) ? "" : apiKey;
+		Bucket bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = new Bucket();
+			buckets.put(key, bucket);
+		}
+		return bucket;
+	}
+
+	private static void sleepNs(long waitNs) {
+		if (waitNs > 0) {
+			try {
+				Thread.sleep(waitNs / 1000000, (int) (waitNs % 1000000));
+			} catch (InterruptedException e) {
+				logger.warn("Unepected interruption: " + e.toString());
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package fm.flickr.api.wrapper.util;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+
+import fm.util.Config;
+
+/**
+ * Diagnostics mode: keep the raw bodies of the last responses received from Flickr in a ring buffer, as bytes
+ * and before any parsing, and dump them to the log only when an error occurs. The size of the buffer is set
+ * by property 'fm.flickr.api.wrapper.diagnostics.size', 0 disables the diagnostics mode.
+ *
+ * The buffer is shared by all threads, thus a dump may show responses of requests other than the one that
+ * failed: each response is logged with its url, thread and time. The credentials (api key, authentication token
+ * and signature) are removed from the urls recorded.
+ *
+ * @author fmichel
+ */
+public class ResponseDiagnostics
+{
+	private static Logger logger = Logger.getLogger(ResponseDiagnostics.class.getName());
+
+	private static Configuration config = Config.getConfiguration();
+
+	private static final int SIZE = Math.max(0, config.getInt("fm.flickr.api.wrapper.diagnostics.size", 0));
+
+	private static final String[] urls = new String[SIZE];
+
+	private static final byte[][] bodies = new byte[SIZE][];
+
+	private static final String[] threads = new String[SIZE];
+
+	private static final long[] times = new long[SIZE];
+
+	/** Url parameters removed before recording a url */
+	private static final String[] CREDENTIALS = { "api_key", "auth_token", "api_sig" };
+
+	/** Index of the slot where the next response will be stored */
+	private static int next = 0;
+
+	/** Number of responses currently in the buffer */
+	private static int count = 0;
+
+	/**
+	 * Keep a response in the buffer. The oldest one is overwritten when the buffer is full.
+	 *
+	 * @param url url of the request, credentials are removed before it is recorded
+	 * @param body raw response body, it is not copied and must not be modified afterwards
+	 */
+	public static void record(String url, byte[] body) {
+		if (SIZE == 0)
+			return;
+
+		String safeUrl = removeCredentials(url);
+		synchronized (ResponseDiagnostics.class) {
+			urls[next] = safeUrl;
+			bodies[next] = body;
+			threads[next] = Thread.currentThread().getName();
+			times[next] = System.currentTimeMillis();
+			next = (next + 1) % SIZE;
+			if (count < SIZE)
+				count++;
+		}
+	}
+
+	/**
+	 * Log the responses of the buffer from the oldest to the most recent one, then empty the buffer
+	 *
+	 * @param cause description of the error that triggers the dump
+	 */
+	public static void dump(String cause) {
+		if (SIZE == 0)
+			return;
+
+		synchronized (ResponseDiagnostics.class) {
+			if (count == 0)
+				return;
+
+			SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss.SSS");
+			StringBuilder sb = new StringBuilder();
+			sb.append("Last " + count + " responses before error \"" + cause + "\":");
+			for (int i = 0; i < count; i++) {
+				int idx = (next - count + i + SIZE) % SIZE;
+				sb.append("\n--- " + sdf.format(new Date(times[idx])) + " [" + threads[idx] + "] " + urls[idx] + "\n");
+				sb.append(new String(bodies[idx], StandardCharsets.UTF_8));
+				urls[idx] = null;
+				bodies[idx] = null;
+				threads[idx] = null;
+			}
+			count = 0;
+			logger.warn(sb.toString());
+		}
+	}
+
+	/**
+	 * Remove the credential parameters from a url
+	 *
+	 * @param url url of a request, with parameters separated by '&amp;'
+	 * @return the url without the parameters listed in CREDENTIALS
+	 */
+	private static String removeCredentials(String url) {
+		int query = url.indexOf('?');
+		if (query < 0)
+			return url;
+
+		StringBuilder sb = new StringBuilder(url.substring(0, query + 1));
+		boolean first = true;
+		for (String param : url.substring(query + 1).split("&")) {
+			boolean credential = false;
+			for (String name : CREDENTIALS)
+				if (param.startsWith(name + "="))
+					credential = true;
+			if (!credential && param.length() > 0) {
+				if (!first)
+					sb.append('&');
+				sb.append(param);
+				first = false;
+			}
+		}
+		return sb.toString();
+	}
+}
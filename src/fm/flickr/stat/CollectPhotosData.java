@@ -7,16 +7,28 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.log4j.Logger;
 
 import fm.flickr.api.wrapper.service.FlickrService;
+import fm.flickr.api.wrapper.service.ResponseCache;
+import fm.flickr.api.wrapper.service.UserInfoCache;
 import fm.flickr.api.wrapper.service.param.PhotoItem;
 import fm.flickr.api.wrapper.service.param.PhotoItemsSet;
+import fm.flickr.stat.param.PhotoRecord;
 import fm.flickr.stat.perform.ActivityStat;
+import fm.flickr.stat.perform.DailyFiles;
 import fm.flickr.stat.perform.GroupStat;
+import fm.flickr.stat.perform.PhotoRecordFetcher;
+import fm.flickr.stat.perform.PhotoRecordJournal;
 import fm.flickr.stat.perform.TagStat;
 import fm.flickr.stat.perform.UploadsStat;
 import fm.util.Config;
@@ -26,7 +38,9 @@ import fm.util.Util;
  * <p>This is the main entry point for collecting data. It gets photo ids either from Interestingness at the 
  * specified dates, or from an input file that was built previously.</p>
  * <p>For each photo id, it collects additinal stats about groups, tags, users, times and activity,
- * using classes from package fm.flickr.stat.perform.
+ * using classes from package fm.flickr.stat.perform. The data of each photo is fetched only once,
+ * and shared by all the statistics.
+ * Several dates may be processed concurrently, see property 'fm.flickr.stat.collect.nbdays_in_parallel'.
  * In addition, it can also collect the number of photos uploaded to Flickr hour by hour. </p>
  * @author fmichel
 */
@@ -54,33 +68,58 @@ public class CollectPhotosData
 
 			SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
 
-			//--- Collect data from Interstingness and store it into one file per day and per type of statistics
+			// List the dates to process
+			final List<String> dates = new ArrayList<String>();
 			while (calStart.before(calEnd)) {
-
-				// Format date to process as yyyy-mm-dd
-				String date = sdf.format(calStart.getTime());
-				logger.info("Starting collecting data on " + date);
-
-				// Collect data on photos on that date (In case of Interstingness, max 500 photos are reported every day)
-				collect(date);
-
-				// Collect number of daily uploads to Flickr
-				if (config.getString("fm.flickr.stat.action.uploads").equals("on"))
-					new UploadsStat().collecUploads(date);
-
+				dates.add(sdf.format(calStart.getTime()));
 				// Increase the date by n days, and proceed with that next date
 				calStart.add(GregorianCalendar.DAY_OF_MONTH, config.getInt("fm.flickr.stat.step_between_measure"));
+			}
 
-				// Sleep between each photo... just not to be overloading (may not be necessary...)
-				try {
-					//logger.info("Sleep for 5s");
-					Thread.sleep(10);
-				} catch (InterruptedException e) {
-					logger.warn("Unepected interruption: " + e.toString());
-					e.printStackTrace();
-				}
+			//--- Collect data from Interstingness and store it into one file per day and per type of statistics.
+			// Several dates may be processed concurrently, the overall request rate is capped by the Flickr API wrapper
+			int nbDaysInParallel = Math.max(1, config.getInt("fm.flickr.stat.collect.nbdays_in_parallel", 1));
+			logger.info("Collecting data on " + dates.size() + " dates, " + nbDaysInParallel + " at a time");
+
+			final AtomicInteger nbDone = new AtomicInteger(0);
+			final AtomicInteger nbRunning = new AtomicInteger(0);
+			final List<String> failedDates = Collections.synchronizedList(new ArrayList<String>());
+
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(nbDaysInParallel, Math.max(1, dates.size())));
+			for (final String date : dates) {
+				executor.submit(new Runnable() {
+					public void run() {
+						// Name the thread after the date so that log traces of concurrent dates can be told apart
+						Thread.currentThread().setName(date);
+						logger.info("Starting collecting data on " + date + " (" + nbRunning.incrementAndGet() + " dates running)");
+						try {
+							// Collect data on photos on that date (In case of Interstingness, max 500 photos are reported every day)
+							collect(date);
+
+							// Collect number of daily uploads to Flickr
+							if (config.getString("fm.flickr.stat.action.uploads").equals("on"))
+								new UploadsStat().collecUploads(date);
+
+						} catch (Exception e) {
+							logger.error("Unexpected error while collecting data on " + date + ". Exception: " + e.toString());
+							e.printStackTrace();
+							failedDates.add(date);
+						}
+						nbRunning.decrementAndGet();
+						logger.info("Completed date " + date + ": " + nbDone.incrementAndGet() + "/" + dates.size() + " dates processed");
+					}
+				});
 			}
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
 
+			if (!failedDates.isEmpty()) {
+				Collections.sort(failedDates);
+				logger.warn("Dates that could not be processed: " + failedDates);
+			}
+
+			ResponseCache.logStats();
+			logger.info("User info cache: " + UserInfoCache.getHits() + " hits, " + UserInfoCache.getMisses() + " misses");
 			logger.info("end");
 
 		} catch (Exception e) {
@@ -116,21 +155,46 @@ public class CollectPhotosData
 			} else {
 				logger.info("######## " + date + ": " + photos.size() + " photos to be processed...");
 
-				if (config.getString("fm.flickr.stat.action.group").equals("on"))
-					GroupStat.collecAdditionalData(date, photos);
+				boolean groupOn = config.getString("fm.flickr.stat.action.group").equals("on");
+				boolean tagOn = config.getString("fm.flickr.stat.action.tag").equals("on");
+				boolean activityOn = config.getString("fm.flickr.stat.action.activity").equals("on");
+				boolean anyPhotoOn = config.getString("fm.flickr.stat.action.anyphoto").equals("on");
+
+				// Fetch the data of each photo once, then hand it to all the statistics.
+				// Photos completed are written to a journal so that an interrupted collection can be resumed
+				File journalFile = new File(Util.getDir(config.getString("fm.flickr.stat.journal.dir", "stats/journal/")), date + ".journal");
+				String content = "group=" + groupOn + ", tag=" + tagOn + ", activity=" + (activityOn || anyPhotoOn) + ", photoslist=" + photoList;
+				PhotoRecordJournal journal = new PhotoRecordJournal(journalFile, content);
+				List<PhotoRecord> records = PhotoRecordFetcher.fetch(photos, groupOn, tagOn, activityOn || anyPhotoOn, journal);
 
-				if (config.getString("fm.flickr.stat.action.tag").equals("on"))
-					TagStat.collecAdditionalData(date, photos);
+				if (groupOn)
+					GroupStat.collecAdditionalData(date, records);
 
-				if (config.getString("fm.flickr.stat.action.activity").equals("on")) {
-					File outputFile = new File(Util.getDir(config.getString("fm.flickr.stat.activity.dir")), date + ".csv");
-					ActivityStat.collecAdditionalData(outputFile, date, photos);
+				if (tagOn)
+					TagStat.collecAdditionalData(date, records);
+
+				if (activityOn) {
+					File outputFile = DailyFiles.newFile(config.getString("fm.flickr.stat.activity.dir"), date, ".csv");
+					ActivityStat.collecAdditionalData(outputFile, date, records);
 				}
 
-				if (config.getString("fm.flickr.stat.action.anyphoto").equals("on")) {
-					File outputFile = new File(Util.getDir(config.getString("fm.flickr.stat.anyphoto.dir")), date + ".csv");
-					ActivityStat.collecAdditionalData(outputFile, date, photos);
+				if (anyPhotoOn) {
+					File outputFile = DailyFiles.newFile(config.getString("fm.flickr.stat.anyphoto.dir"), date, ".csv");
+					ActivityStat.collecAdditionalData(outputFile, date, records);
 				}
+
+				// Summaries of the day, merged by ComputeStatsTimeframe instead of loading the daily files (if snapshots are on)
+				if (groupOn)
+					GroupStat.saveDailySummary(date);
+				if (tagOn)
+					TagStat.saveDailySummary(date);
+				if (activityOn)
+					ActivityStat.saveDailySummary(date, config.getString("fm.flickr.stat.activity.dir"));
+				if (anyPhotoOn)
+					ActivityStat.saveDailySummary(date, config.getString("fm.flickr.stat.anyphoto.dir"));
+
+				// All results of the day are saved, the journal is no longer needed
+				journal.delete();
 			}
 		}
 	}
@@ -13,6 +13,7 @@ import fm.flickr.api.wrapper.util.ServiceException;
 import fm.flickr.stat.perform.ActivityStat;
 import fm.flickr.stat.perform.UploadsStat;
 import fm.util.Config;
+import fm.util.ReportOutput;
 
 /** 
  * This class crosses data of two sources: post time of explored photos, and total number of uploads,
@@ -67,28 +68,32 @@ public class ComputeProbabilityPerWeekDayAndHour
 			String[] tokensEnd = stopDate.split("-");
 			GregorianCalendar calEnd = new GregorianCalendar(Integer.valueOf(tokensEnd[0]), Integer.valueOf(tokensEnd[1]) - 1, Integer.valueOf(tokensEnd[2]));
 
-			PrintStream output = new PrintStream("stats/proba_explo.csv");
-
-			//--- Load all daily data files created between start date and end date
-			calStart = new GregorianCalendar(Integer.valueOf(tokensStart[0]), Integer.valueOf(tokensStart[1]) - 1, Integer.valueOf(tokensStart[2]));
-			output.println("# YYY-MM-DD HH:MM; nb of explored photos; nb of uploads; % of explored/posted");
-			while (calStart.before(calEnd)) {
-				// Format date to process as yyyy-mm-dd
-				String date = dateFrmt.format(calStart.getTime());
-				int dayOfWeek = convertUsDoWToFr(calStart.get(GregorianCalendar.DAY_OF_WEEK));
-
-				try {
-					loadFileByDay(date);
-					computeStatistics(dayOfWeek);
-				} catch (ServiceException e) {
-					logger.warn(e.toString());
+			PrintStream output = ReportOutput.open("stats/proba_explo.csv");
+
+			try {
+				//--- Load all daily data files created between start date and end date
+				calStart = new GregorianCalendar(Integer.valueOf(tokensStart[0]), Integer.valueOf(tokensStart[1]) - 1, Integer.valueOf(tokensStart[2]));
+				output.println("# YYY-MM-DD HH:MM; nb of explored photos; nb of uploads; % of explored/posted");
+				while (calStart.before(calEnd)) {
+					// Format date to process as yyyy-mm-dd
+					String date = dateFrmt.format(calStart.getTime());
+					int dayOfWeek = convertUsDoWToFr(calStart.get(GregorianCalendar.DAY_OF_WEEK));
+
+					try {
+						loadFileByDay(date);
+						computeStatistics(dayOfWeek);
+					} catch (ServiceException e) {
+						logger.warn(e.toString());
+					}
+					// Increase the date by 1 day, and proceed with that next date
+					calStart.add(GregorianCalendar.DAY_OF_MONTH, 1);
 				}
-				// Increase the date by 1 day, and proceed with that next date
-				calStart.add(GregorianCalendar.DAY_OF_MONTH, 1);
-			}
 
-			// Display final table of probabilities
-			computeProba(output);
+				// Display final table of probabilities
+				computeProba(output);
+			} finally {
+				output.close();
+			}
 			logger.debug("end");
 
 		} catch (Exception e) {
@@ -149,9 +154,9 @@ public class ComputeProbabilityPerWeekDayAndHour
 				if (uploadTable.get(day).get(hour) != 0) { // avoid division by 0
 					float f = exploredTable.get(day).get(hour) * 100;
 					f = f / uploadTable.get(day).get(hour);
-					ps.printf("%2.4f", f);
+					ps.print(ReportOutput.format4(f));
 				} else
-					ps.printf("%2.4f", (float) 0);
+					ps.print(ReportOutput.format4(0));
 				if (hour < 23)
 					ps.print("; ");
 			}
@@ -25,28 +25,32 @@ public class ComputeStatsMonthly extends ComputeStats
 		try {
 			logger.debug("begin");
 			ComputeStatsMonthly processor = new ComputeStatsMonthly();
-			processor.initComputeActivity();
-
-			//--- Process all data files created per month and per type of statistics
-			SimpleDateFormat ymDateFrmt = new SimpleDateFormat("yyyy-MM");
-			while (processor.calStart.before(processor.calEnd)) {
-
-				// Format month to process as yyyy-mm and load the files of that month
-				String month = ymDateFrmt.format(processor.calStart.getTime());
-				logger.info("Processing data for month " + month);
-				try {
-					// Load all data files for the given month 
-					processor.loadFileByMonth(month);
-
-					// Comupute and write results into output files
-					processor.computeStatistics(month);
+			try {
+				processor.initComputeActivity();
+
+				//--- Process all data files created per month and per type of statistics
+				SimpleDateFormat ymDateFrmt = new SimpleDateFormat("yyyy-MM");
+				while (processor.calStart.before(processor.calEnd)) {
+
+					// Format month to process as yyyy-mm and load the files of that month
+					String month = ymDateFrmt.format(processor.calStart.getTime());
+					logger.info("Processing data for month " + month);
+					try {
+						// Load all data files for the given month 
+						processor.loadFileByMonth(month);
+
+						// Comupute and write results into output files
+						processor.computeStatistics(month);
 					
-				} catch (ServiceException e) {
-					logger.warn(e.toString());
-				}
+					} catch (ServiceException e) {
+						logger.warn(e.toString());
+					}
 
-				// Increase the date by one month, and start again
-				processor.calStart.add(GregorianCalendar.MONTH, 1);
+					// Increase the date by one month, and start again
+					processor.calStart.add(GregorianCalendar.MONTH, 1);
+				}
+			} finally {
+				processor.closeComputeActivity();
 			}
 
 			logger.debug("end");
@@ -27,26 +27,30 @@ public class ComputeStatsTimeframe extends ComputeStats
 		try {
 			logger.debug("begin");
 			processor = new ComputeStatsTimeframe();
-			processor.initComputeActivity();
-
-			//--- Load all daily data files created between start date and end date per type of statistics
-			SimpleDateFormat dateFrmt = new SimpleDateFormat("yyyy-MM-dd");
-			while (processor.calStart.before(processor.calEnd)) {
-
-				// Format date to process as yyyy-mm-dd
-				String date = dateFrmt.format(processor.calStart.getTime());
-				try {
-					processor.loadFileByDay(date);
-				} catch (ServiceException e) {
-					logger.warn(e.toString());
+			try {
+				processor.initComputeActivity();
+
+				//--- Load all daily data files created between start date and end date per type of statistics
+				SimpleDateFormat dateFrmt = new SimpleDateFormat("yyyy-MM-dd");
+				while (processor.calStart.before(processor.calEnd)) {
+
+					// Format date to process as yyyy-mm-dd
+					String date = dateFrmt.format(processor.calStart.getTime());
+					try {
+						processor.loadFileByDay(date);
+					} catch (ServiceException e) {
+						logger.warn(e.toString());
+					}
+					// Increase the date by 1 day, and proceed with that next date
+					processor.calStart.add(GregorianCalendar.DAY_OF_MONTH, 1);
 				}
-				// Increase the date by 1 day, and proceed with that next date
-				processor.calStart.add(GregorianCalendar.DAY_OF_MONTH, 1);
-			}
 
-			//--- Comupute and write the results to the output
-			System.out.println("# Period from " + processor.startDate + " to " + processor.stopDate + "");
-			processor.computeStatistics();
+				//--- Comupute and write the results to the output
+				System.out.println("# Period from " + processor.startDate + " to " + processor.stopDate + "");
+				processor.computeStatistics();
+			} finally {
+				processor.closeComputeActivity();
+			}
 
 			logger.debug("end");
 
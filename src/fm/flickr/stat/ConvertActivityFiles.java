@@ -0,0 +1,86 @@
+package fm.flickr.stat;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+
+import fm.flickr.api.wrapper.util.ServiceException;
+import fm.flickr.stat.perform.ActivityBinaryFile;
+import fm.flickr.stat.perform.ActivityStat;
+import fm.flickr.stat.perform.DailyFiles;
+import fm.util.Config;
+
+/**
+ * This main class converts the existing daily activity csv files into binary files (see {@link ActivityBinaryFile}),
+ * that are loaded instead of the csv files by the statistics tools. Csv files are left unchanged.
+ *
+ * The folders to convert are given as arguments, by default the folders denoted by properties
+ * fm.flickr.stat.activity.dir and fm.flickr.stat.anyphoto.dir. Days that already have an up-to-date binary
+ * file are skipped, thus the conversion can be run again at any time.
+ *
+ * @author fmichel
+*/
+
+public class ConvertActivityFiles
+{
+	private static Logger logger = Logger.getLogger(ConvertActivityFiles.class.getName());
+
+	private static Configuration config = Config.getConfiguration();
+
+	public static void main(String[] args) {
+		logger.debug("begin");
+		try {
+			String[] folders = args;
+			if (folders.length == 0)
+				folders = new String[] { config.getString("fm.flickr.stat.activity.dir"), config.getString("fm.flickr.stat.anyphoto.dir") };
+
+			for (String folder : folders)
+				convertFolder(new File(folder));
+
+			logger.debug("end");
+
+		} catch (Exception e) {
+			logger.error("Unexpected error. Exception: " + e.toString());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Convert the daily csv files of a folder, named yyyy-mm-dd.csv, in the flat or partitioned layout (see {@link DailyFiles})
+	 * @param dir folder to convert
+	 */
+	private static void convertFolder(File dir) {
+		List<File> files;
+		try {
+			files = DailyFiles.listFiles(dir, "");
+		} catch (ServiceException e) {
+			logger.warn("Data directory " + dir.getPath() + " does not exist.");
+			return;
+		}
+
+		int nbConverted = 0;
+		long totalCsvBytes = 0;
+		long totalBinBytes = 0;
+		for (File csvFile : files) {
+			if (!csvFile.getName().matches("\\d{4}-\\d{2}-\\d{2}\\.csv"))
+				continue;
+
+			File binFile = ActivityStat.getBinaryFile(csvFile);
+			if (binFile.exists() && binFile.lastModified() >= csvFile.lastModified())
+				continue;
+
+			try {
+				ActivityBinaryFile.write(binFile, ActivityStat.readCsvFile(csvFile));
+				nbConverted++;
+				totalCsvBytes += csvFile.length();
+				totalBinBytes += binFile.length();
+				logger.debug("Converted " + csvFile.getName());
+			} catch (Exception e) {
+				logger.warn("Cannot convert file " + csvFile.getPath() + ": " + e.toString());
+			}
+		}
+		logger.info("Converted " + nbConverted + " files in " + dir.getPath() + ": " + totalCsvBytes + " bytes of csv into " + totalBinBytes + " bytes of binary data");
+	}
+}
@@ -1,7 +1,7 @@
 package fm.flickr.stat;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
@@ -45,7 +45,7 @@ public class FindUsersWithCentrality
 	private static FlickrService service = new FlickrService();
 
 	// Users collected
-	private static List<String> users = new ArrayList<String>();
+	private static Set<String> users = new HashSet<String>();
 
 	public static void main(String[] args) {
 		try {
@@ -12,6 +12,7 @@ import org.apache.log4j.Logger;
 import fm.flickr.api.wrapper.util.ServiceException;
 import fm.flickr.stat.perform.UploadsStat;
 import fm.util.Config;
+import fm.util.ReportOutput;
 
 /** 
  * This main class simply reports what already exists in daily files, namely the sum of photos
@@ -43,26 +44,29 @@ public class ProcessUploadsPerDay
 
 			//--- Load all daily data files created between start date and end date
 
-			PrintStream ps = new PrintStream(config.getString("fm.flickr.stat.uploads.dir") + "/daily_uploads.csv");
-
-			calStart = new GregorianCalendar(Integer.valueOf(tokensStart[0]), Integer.valueOf(tokensStart[1]) - 1, Integer.valueOf(tokensStart[2]));
-			System.out.println("# YYY-MM-DD HH:MM; nb of explored photos; nb of uploads; % of explored/posted");
-			while (calStart.before(calEnd)) {
-				// Format date to process as yyyy-mm-dd
-				String date = dateFrmt.format(calStart.getTime());
-				try {
-					loadFileByDay(date);
-					computeStatistics(date, ps);
-
-				} catch (ServiceException e) {
-					logger.warn(e.toString());
+			PrintStream ps = ReportOutput.open(config.getString("fm.flickr.stat.uploads.dir") + "/daily_uploads.csv");
+
+			try {
+				calStart = new GregorianCalendar(Integer.valueOf(tokensStart[0]), Integer.valueOf(tokensStart[1]) - 1, Integer.valueOf(tokensStart[2]));
+				System.out.println("# YYY-MM-DD HH:MM; nb of explored photos; nb of uploads; % of explored/posted");
+				while (calStart.before(calEnd)) {
+					// Format date to process as yyyy-mm-dd
+					String date = dateFrmt.format(calStart.getTime());
+					try {
+						loadFileByDay(date);
+						computeStatistics(date, ps);
+
+					} catch (ServiceException e) {
+						logger.warn(e.toString());
+					}
+					// Increase the date by 1 day, and proceed with that next date
+					calStart.add(GregorianCalendar.DAY_OF_MONTH, 1);
 				}
-				// Increase the date by 1 day, and proceed with that next date
-				calStart.add(GregorianCalendar.DAY_OF_MONTH, 1);
+			} finally {
+				ps.close();
 			}
 
 			logger.debug("end");
-			ps.close();
 
 		} catch (Exception e) {
 			logger.error("Unexpected error. Exception: " + e.toString());
@@ -0,0 +1,92 @@
+package fm.flickr.stat.param;
+
+import java.io.Serializable;
+
+import fm.flickr.api.wrapper.service.param.GroupItemsSet;
+import fm.flickr.api.wrapper.service.param.PhotoItem;
+import fm.flickr.api.wrapper.service.param.PhotoItemInfo;
+import fm.flickr.api.wrapper.service.param.TagItemsSet;
+import fm.flickr.api.wrapper.service.param.UserInfo;
+
+/**
+ * All the data collected once about a photo, and shared by the classes that compute statistics
+ * (groups, tags, activity). Any of the fields may be null if it was not requested or could not be retrieved.
+ *
+ * @author fmichel
+ */
+public class PhotoRecord implements Serializable
+{
+	private static final long serialVersionUID = 4472015268470823217L;
+
+	/** Photo id and rank in Interestingness */
+	private PhotoItem photo;
+
+	/** Result of service flickr.photos.getInfo, including the tags of the photo */
+	private PhotoItemInfo photoInfo;
+
+	/** Groups (pools) the photo belongs to */
+	private GroupItemsSet groupsSet;
+
+	/** Number of favorites */
+	private String nbFavs;
+
+	/** Information about the owner of the photo */
+	private UserInfo userInfo;
+
+	public PhotoRecord(PhotoItem photo) {
+		this.photo = photo;
+		this.photoInfo = null;
+		this.groupsSet = null;
+		this.nbFavs = null;
+		this.userInfo = null;
+	}
+
+	public PhotoItem getPhoto() {
+		return photo;
+	}
+
+	public String getPhotoId() {
+		return photo.getPhotoId();
+	}
+
+	public PhotoItemInfo getPhotoInfo() {
+		return photoInfo;
+	}
+
+	public void setPhotoInfo(PhotoItemInfo photoInfo) {
+		this.photoInfo = photoInfo;
+	}
+
+	/**
+	 * @return the tags of the photo as returned by flickr.photos.getInfo, or null if photo info is not available
+	 */
+	public TagItemsSet getTagsSet() {
+		if (photoInfo == null)
+			return null;
+		return photoInfo.getTagsSet();
+	}
+
+	public GroupItemsSet getGroupsSet() {
+		return groupsSet;
+	}
+
+	public void setGroupsSet(GroupItemsSet groupsSet) {
+		this.groupsSet = groupsSet;
+	}
+
+	public String getNbFavs() {
+		return nbFavs;
+	}
+
+	public void setNbFavs(String nbFavs) {
+		this.nbFavs = nbFavs;
+	}
+
+	public UserInfo getUserInfo() {
+		return userInfo;
+	}
+
+	public void setUserInfo(UserInfo userInfo) {
+		this.userInfo = userInfo;
+	}
+}
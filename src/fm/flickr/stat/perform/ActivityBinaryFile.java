@@ -0,0 +1,436 @@
+package fm.flickr.stat.perform;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.log4j.Logger;
+
+import fm.flickr.api.wrapper.service.param.Location;
+import fm.flickr.api.wrapper.service.param.PhotoItemInfo;
+
+/**
+ * Columnar binary format of the activity data collected on one day: the same data as the csv files written by
+ * {@link ActivityStat}, but much faster to load since there is nothing to split or parse.
+ * <p>
+ * File layout (big-endian, as written by DataOutputStream):
+ * <ul>
+ * <li>header: magic number, format version, number of rows n;</li>
+ * <li>dictionary of owner ids, then dictionary of countries: number of entries followed by each entry (length
+ * then UTF-8 bytes). Rows refer to an entry by its index, -1 if unknown;</li>
+ * <li>columns of n values each, in that order: photo id (long), rank (int), views (int), comments (int), favs (int),
+ * notes (int), groups (int), tags (int), post date (long), owner's photos (int), owner's contacts (int), owner id
+ * (int), longitude (double), latitude (double), country (int), take date (long), owner is pro (byte).</li>
+ * </ul>
+ * </p>
+ * Dates are stored as the number of seconds from 1970-01-01 00:00:00 to the date and time written in the csv files,
+ * that is a local time with no time zone, or {@link #NO_DATE} if unknown. An unknown location is stored as NaN.
+ * <p>
+ * Columns have a fixed width, thus a file can also be scanned in place without loading it, see {@link #map(File)}.
+ * </p>
+ *
+ * @author fmichel
+ */
+public class ActivityBinaryFile
+{
+	private static Logger logger = Logger.getLogger(ActivityBinaryFile.class.getName());
+
+	/** Extension of the binary files, next to the csv files of the same day */
+	public static final String EXTENSION = ".bin";
+
+	private static final int MAGIC = 0x46414354; // "FACT"
+
+	private static final int VERSION = 1;
+
+	/** Value of a date column when the date is unknown */
+	public static final long NO_DATE = Long.MIN_VALUE;
+
+	/** Value of a dictionary column when the entry is unknown */
+	public static final int NO_ENTRY = -1;
+
+	private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+	/**
+	 * Save the activity about photos into a binary file. The file is replaced atomically, so that a reader never
+	 * sees a partially written file.
+	 *
+	 * @param file file where to write the data
+	 * @param photos photos in the order they must be written, with the owner's information set
+	 * @throws IOException in case the file can't be saved
+	 */
+	public static void write(File file, List<PhotoItemInfo> photos) throws IOException {
+		int nbRows = photos.size();
+		SimpleDateFormat sdf = getDateFormat();
+
+		// Build the dictionaries of owner ids and countries
+		List<String> owners = new ArrayList<String>();
+		List<String> countries = new ArrayList<String>();
+		int[] ownerIdx = new int[nbRows];
+		int[] countryIdx = new int[nbRows];
+		HashMap<String, Integer> ownersMap = new HashMap<String, Integer>();
+		HashMap<String, Integer> countriesMap = new HashMap<String, Integer>();
+		for (int i = 0; i < nbRows; i++) {
+			PhotoItemInfo photo = photos.get(i);
+			ownerIdx[i] = getEntry(ownersMap, owners, photo.getOwnerNsid());
+			Location loc = photo.getLocation();
+			countryIdx[i] = getEntry(countriesMap, countries, (loc == null) ? null : loc.getCountry());
+		}
+
+		File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(nbRows);
+			writeDictionary(out, owners);
+			writeDictionary(out, countries);
+
+			for (PhotoItemInfo photo : photos)
+				out.writeLong(parseLong(photo.getPhotoId(), -1));
+			for (PhotoItemInfo photo : photos)
+				out.writeInt(photo.getInterestingnessRank());
+			for (PhotoItemInfo photo : photos)
+				out.writeInt(parseInt(photo.getNbViews()));
+			for (PhotoItemInfo photo : photos)
+				out.writeInt(parseInt(photo.getNbComments()));
+			for (PhotoItemInfo photo : photos)
+				out.writeInt(parseInt(photo.getNbFavs()));
+			for (PhotoItemInfo photo : photos)
+				out.writeInt(parseInt(photo.getNbNotes()));
+			for (PhotoItemInfo photo : photos)
+				out.writeInt(parseInt(photo.getNbGroups()));
+			for (PhotoItemInfo photo : photos)
+				out.writeInt(photo.getNbTags());
+			for (PhotoItemInfo photo : photos)
+				out.writeLong(parseDate(sdf, photo.getDatePost()));
+			for (PhotoItemInfo photo : photos)
+				out.writeInt(photo.getOwnersPhotos());
+			for (PhotoItemInfo photo : photos)
+				out.writeInt(photo.getOwnersContacts());
+			for (int i = 0; i < nbRows; i++)
+				out.writeInt(ownerIdx[i]);
+			for (PhotoItemInfo photo : photos)
+				out.writeDouble((photo.getLocation() == null) ? Double.NaN : parseDouble(photo.getLocation().getLongitude()));
+			for (PhotoItemInfo photo : photos)
+				out.writeDouble((photo.getLocation() == null) ? Double.NaN : parseDouble(photo.getLocation().getLatitude()));
+			for (int i = 0; i < nbRows; i++)
+				out.writeInt(countryIdx[i]);
+			for (PhotoItemInfo photo : photos)
+				out.writeLong(parseDate(sdf, photo.getDateTake()));
+			for (PhotoItemInfo photo : photos)
+				out.writeByte(photo.isOwnerPro() ? 1 : 0);
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Load the content of a binary file
+	 *
+	 * @param file the file to read
+	 * @return the photos in the order they were written
+	 * @throws IOException if the file cannot be read or is not a valid binary activity file
+	 */
+	public static List<PhotoItemInfo> read(File file) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		try {
+			if (buf.getInt() != MAGIC)
+				throw new IOException("Not a binary activity file: " + file.getName());
+			int version = buf.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported version " + version + " of binary activity file " + file.getName());
+
+			int nbRows = buf.getInt();
+			String[] owners = readDictionary(buf);
+			String[] countries = readDictionary(buf);
+
+			PhotoItemInfo[] rows = new PhotoItemInfo[nbRows];
+			for (int i = 0; i < nbRows; i++) {
+				rows[i] = new PhotoItemInfo();
+				rows[i].setPhotoId(String.valueOf(buf.getLong()));
+			}
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setInterestingnessRank(buf.getInt());
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setNbViews(String.valueOf(buf.getInt()));
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setNbComments(String.valueOf(buf.getInt()));
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setNbFavs(String.valueOf(buf.getInt()));
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setNbNotes(String.valueOf(buf.getInt()));
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setNbGroups(String.valueOf(buf.getInt()));
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setNbTags(buf.getInt());
+
+			SimpleDateFormat sdf = getDateFormat();
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setDatePost(formatDate(sdf, buf.getLong()));
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setOwnersPhotos(buf.getInt());
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setOwnersContacts(buf.getInt());
+			for (int i = 0; i < nbRows; i++) {
+				int idx = buf.getInt();
+				if (idx != NO_ENTRY)
+					rows[i].setOwnerNsid(owners[idx]);
+			}
+
+			String[] longitudes = new String[nbRows];
+			for (int i = 0; i < nbRows; i++)
+				longitudes[i] = formatDouble(buf.getDouble());
+			String[] latitudes = new String[nbRows];
+			for (int i = 0; i < nbRows; i++)
+				latitudes[i] = formatDouble(buf.getDouble());
+			for (int i = 0; i < nbRows; i++) {
+				int idx = buf.getInt();
+				rows[i].setLocation(new Location(longitudes[i], latitudes[i], (idx == NO_ENTRY) ? "" : countries[idx]));
+			}
+
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setDateTake(formatDate(sdf, buf.getLong()));
+			for (int i = 0; i < nbRows; i++)
+				rows[i].setOwnerPro(buf.get() != 0);
+
+			List<PhotoItemInfo> result = new ArrayList<PhotoItemInfo>(nbRows);
+			for (PhotoItemInfo row : rows)
+				result.add(row);
+			return result;
+
+		} catch (RuntimeException e) {
+			// BufferUnderflowException or IndexOutOfBoundsException: the file is truncated or corrupted
+			throw new IOException("Invalid binary activity file " + file.getName() + ": " + e.toString());
+		}
+	}
+
+	/**
+	 * Map a binary file in memory: values are read from the file when they are accessed, no object is created
+	 * for the rows. Only the dictionaries are loaded.
+	 *
+	 * @param file the file to read
+	 * @return the rows of the file
+	 * @throws IOException if the file cannot be read or is not a valid binary activity file
+	 */
+	public static ActivityRows map(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return new MappedRows(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} catch (RuntimeException e) {
+			throw new IOException("Invalid binary activity file " + file.getName() + ": " + e.toString());
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Rows of a binary file mapped in memory
+	 */
+	private static class MappedRows implements ActivityRows
+	{
+		private ByteBuffer buf;
+
+		private int nbRows;
+
+		private String[] owners;
+
+		/** Offsets of the columns in the buffer */
+		private int views, comments, favs, groups, tags, datePost, ownersPhotos, ownersContacts, owner, longitude, latitude;
+
+		/** Current row */
+		private int row = -1;
+
+		MappedRows(File file, ByteBuffer buf) throws IOException {
+			this.buf = buf;
+			if (buf.getInt() != MAGIC)
+				throw new IOException("Not a binary activity file: " + file.getName());
+			int version = buf.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported version " + version + " of binary activity file " + file.getName());
+
+			nbRows = buf.getInt();
+			owners = readDictionary(buf);
+			readDictionary(buf); // countries
+
+			int offset = buf.position();
+			offset += 8 * nbRows; // photo ids
+			offset += 4 * nbRows; // ranks
+			views = offset;
+			comments = views + 4 * nbRows;
+			favs = comments + 4 * nbRows;
+			offset = favs + 4 * nbRows;
+			offset += 4 * nbRows; // notes
+			groups = offset;
+			tags = groups + 4 * nbRows;
+			datePost = tags + 4 * nbRows;
+			ownersPhotos = datePost + 8 * nbRows;
+			ownersContacts = ownersPhotos + 4 * nbRows;
+			owner = ownersContacts + 4 * nbRows;
+			longitude = owner + 4 * nbRows;
+			latitude = longitude + 8 * nbRows;
+			offset = latitude + 8 * nbRows;
+			offset += 4 * nbRows; // countries
+			offset += 8 * nbRows; // take dates
+			offset += nbRows; // pro flags
+			if (offset != buf.limit())
+				throw new IOException("Invalid size of binary activity file " + file.getName());
+		}
+
+		public int size() {
+			return nbRows;
+		}
+
+		public void rewind() {
+			row = -1;
+		}
+
+		public boolean next() {
+			if (row + 1 >= nbRows)
+				return false;
+			row++;
+			return true;
+		}
+
+		public int getViews() {
+			return buf.getInt(views + 4 * row);
+		}
+
+		public int getComments() {
+			return buf.getInt(comments + 4 * row);
+		}
+
+		public int getFavs() {
+			return buf.getInt(favs + 4 * row);
+		}
+
+		public int getGroups() {
+			return buf.getInt(groups + 4 * row);
+		}
+
+		public int getTags() {
+			return buf.getInt(tags + 4 * row);
+		}
+
+		public int getOwnersPhotos() {
+			return buf.getInt(ownersPhotos + 4 * row);
+		}
+
+		public int getOwnersContacts() {
+			return buf.getInt(ownersContacts + 4 * row);
+		}
+
+		public String getOwnerNsid() {
+			int idx = buf.getInt(owner + 4 * row);
+			return (idx == NO_ENTRY) ? "" : owners[idx];
+		}
+
+		public boolean hasLocation() {
+			return !Double.isNaN(buf.getDouble(longitude + 8 * row)) && !Double.isNaN(buf.getDouble(latitude + 8 * row));
+		}
+
+		public long getDatePost() {
+			return buf.getLong(datePost + 8 * row);
+		}
+	}
+
+	/**
+	 * Date format of the post and take dates in the csv files. The time zone is only used to convert these
+	 * dates to and from numbers without any daylight saving ambiguity.
+	 */
+	private static SimpleDateFormat getDateFormat() {
+		SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
+		sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+		sdf.setLenient(false);
+		return sdf;
+	}
+
+	private static long parseDate(SimpleDateFormat sdf, String date) {
+		if (date == null || date.isEmpty())
+			return NO_DATE;
+		try {
+			return sdf.parse(date).getTime() / 1000;
+		} catch (ParseException e) {
+			logger.debug("Unexpected date format, ignoring it: " + date);
+			return NO_DATE;
+		}
+	}
+
+	private static String formatDate(SimpleDateFormat sdf, long date) {
+		return (date == NO_DATE) ? "" : sdf.format(new Date(date * 1000));
+	}
+
+	private static int parseInt(String value) {
+		return (int) parseLong(value, 0);
+	}
+
+	private static long parseLong(String value, long defaultValue) {
+		try {
+			return Long.parseLong(value.trim());
+		} catch (RuntimeException e) {
+			// Null or not a number, e.g. "null" found in some old files
+			return defaultValue;
+		}
+	}
+
+	private static double parseDouble(String value) {
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (RuntimeException e) {
+			return Double.NaN;
+		}
+	}
+
+	private static String formatDouble(double value) {
+		return Double.isNaN(value) ? "" : String.valueOf(value);
+	}
+
+	/**
+	 * @return index of the value in the dictionary, the value is added if it is not in it yet
+	 */
+	private static int getEntry(HashMap<String, Integer> map, List<String> dictionary, String value) {
+		if (value == null || value.isEmpty())
+			return NO_ENTRY;
+		Integer idx = map.get(value);
+		if (idx == null) {
+			idx = dictionary.size();
+			dictionary.add(value);
+			map.put(value, idx);
+		}
+		return idx;
+	}
+
+	private static void writeDictionary(DataOutputStream out, List<String> dictionary) throws IOException {
+		out.writeInt(dictionary.size());
+		for (String entry : dictionary) {
+			byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String[] readDictionary(ByteBuffer buf) {
+		String[] dictionary = new String[buf.getInt()];
+		for (int i = 0; i < dictionary.length; i++) {
+			byte[] bytes = new byte[buf.getInt()];
+			buf.get(bytes);
+			dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return dictionary;
+	}
+}
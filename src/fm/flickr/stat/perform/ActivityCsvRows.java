@@ -0,0 +1,233 @@
+package fm.flickr.stat.perform;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Rows of a daily activity csv file, scanned in place in a memory-mapped buffer: fields are parsed from the bytes
+ * of the file when they are read, no line or field string is created. The file is read the same way as
+ * {@link ActivityStat#readCsvFile(File)} does.
+ *
+ * @author fmichel
+ */
+public class ActivityCsvRows implements ActivityRows
+{
+	private static Logger logger = Logger.getLogger(ActivityCsvRows.class.getName());
+
+	private static final byte FIELD_SEPARATOR = ';';
+
+	/** Number of fields of a line in the current format, any following field is ignored */
+	private static final int MAX_FIELDS = 17;
+
+	private File file;
+
+	private MappedByteBuffer buf;
+
+	private int nbRows;
+
+	/** Position of the next line in the buffer */
+	private int pos = 0;
+
+	/** Start and end positions of the fields of the current line */
+	private int[] starts = new int[MAX_FIELDS];
+
+	private int[] ends = new int[MAX_FIELDS];
+
+	/** Number of fields of the current line, not counting trailing empty fields */
+	private int nbFields;
+
+	/** Invalid lines are reported during the first scan only */
+	private boolean warn = true;
+
+	/**
+	 * Map a csv file in memory and count its rows
+	 *
+	 * @param file a daily activity csv file
+	 * @return the rows of the file
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public static ActivityCsvRows map(File file) throws IOException {
+		ActivityCsvRows rows = new ActivityCsvRows();
+		rows.file = file;
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			rows.buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+
+		while (rows.next())
+			rows.nbRows++;
+		rows.warn = false;
+		rows.rewind();
+		return rows;
+	}
+
+	public int size() {
+		return nbRows;
+	}
+
+	public void rewind() {
+		pos = 0;
+	}
+
+	public boolean next() {
+		int limit = buf.limit();
+		while (pos < limit) {
+			int lineStart = pos;
+			int lineEnd = lineStart;
+			while (lineEnd < limit && buf.get(lineEnd) != '\n')
+				lineEnd++;
+			pos = lineEnd + 1;
+			if (lineEnd > lineStart && buf.get(lineEnd - 1) == '\r')
+				lineEnd--;
+
+			if (isCommentLine(lineStart, lineEnd))
+				continue;
+
+			// Split the line into fields
+			nbFields = 0;
+			int fieldStart = lineStart;
+			for (int i = lineStart; i <= lineEnd && nbFields < MAX_FIELDS; i++) {
+				if (i == lineEnd || buf.get(i) == FIELD_SEPARATOR) {
+					starts[nbFields] = fieldStart;
+					ends[nbFields] = i;
+					nbFields++;
+					fieldStart = i + 1;
+				}
+			}
+			// Trailing empty fields are ignored, as String.split does
+			while (nbFields > 0 && starts[nbFields - 1] == ends[nbFields - 1])
+				nbFields--;
+
+			if (nbFields >= 9)
+				return true;
+			if (warn)
+				logger.warn("Wrong format on line: " + getString(lineStart, lineEnd));
+		}
+		return false;
+	}
+
+	public int getViews() {
+		return getInt(2, 0);
+	}
+
+	public int getComments() {
+		return getInt(3, 0);
+	}
+
+	public int getFavs() {
+		return getInt(4, 0);
+	}
+
+	public int getGroups() {
+		return getInt(6, 0);
+	}
+
+	public int getTags() {
+		return getInt(7, 0);
+	}
+
+	public int getOwnersPhotos() {
+		return getInt(9, -1);
+	}
+
+	public int getOwnersContacts() {
+		return (nbFields > 9) ? getInt(10, 0) : -1;
+	}
+
+	public String getOwnerNsid() {
+		return (nbFields > 11) ? getString(starts[11], ends[11]) : "";
+	}
+
+	public boolean hasLocation() {
+		return nbFields > 13 && ends[12] > starts[12] && ends[13] > starts[13];
+	}
+
+	public long getDatePost() {
+		// The post date was initially stored as a number of hours, it is formatted as yyyy-mm-dd hh:mm:ss since 2012-12-02
+		int start = starts[8];
+		if (ends[8] - start != 19)
+			return ActivityBinaryFile.NO_DATE;
+		try {
+			return LocalDateTime.of(getDigits(start, 4), getDigits(start + 5, 2), getDigits(start + 8, 2), getDigits(start + 11, 2), getDigits(start + 14, 2), getDigits(start + 17, 2)).toEpochSecond(ZoneOffset.UTC);
+		} catch (DateTimeException e) {
+			return ActivityBinaryFile.NO_DATE;
+		} catch (NumberFormatException e) {
+			return ActivityBinaryFile.NO_DATE;
+		}
+	}
+
+	/**
+	 * @return true if the line is a comment (starting with #) or a header line (starting with photo)
+	 */
+	private boolean isCommentLine(int start, int end) {
+		while (start < end && buf.get(start) <= ' ')
+			start++;
+		if (start < end && buf.get(start) == '#')
+			return true;
+		return end - start >= 5 && buf.get(start) == 'p' && buf.get(start + 1) == 'h' && buf.get(start + 2) == 'o' && buf.get(start + 3) == 't' && buf.get(start + 4) == 'o';
+	}
+
+	/**
+	 * @param field index of the field
+	 * @param defaultValue value returned if the field does not exist or is not a number
+	 */
+	private int getInt(int field, int defaultValue) {
+		if (field >= nbFields)
+			return defaultValue;
+
+		int i = starts[field];
+		int end = ends[field];
+		while (i < end && buf.get(i) == ' ')
+			i++;
+		while (end > i && buf.get(end - 1) == ' ')
+			end--;
+
+		boolean negative = (i < end && buf.get(i) == '-');
+		if (negative)
+			i++;
+		if (i == end)
+			return defaultValue;
+
+		int value = 0;
+		for (; i < end; i++) {
+			int digit = buf.get(i) - '0';
+			if (digit < 0 || digit > 9)
+				return defaultValue; // e.g. "null" found in some old files
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	private int getDigits(int start, int length) {
+		int value = 0;
+		for (int i = start; i < start + length; i++) {
+			int digit = buf.get(i) - '0';
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException();
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	private String getString(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = buf.get(start + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public String toString() {
+		return file.getName();
+	}
+}
@@ -0,0 +1,412 @@
+package fm.flickr.stat.perform;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+
+import fm.util.Config;
+import fm.util.ReportOutput;
+
+/**
+ * All the distributions of photos computed by {@link ActivityStat} (by number of groups, views, comments, favs,
+ * tags, owner's photos and contacts, location, post hour, and the users' figures), computed in a single pass over
+ * the activity data with primitive counters. Slices are set by properties fm.flickr.stat.activity.distrib.*.
+ * The distributions of several periods can be merged, thus the distributions of each day can be saved as a summary
+ * and merged to get the distributions of any timeframe.
+ *
+ * @author fmichel
+ */
+public class ActivityHistograms
+{
+	private static Logger logger = Logger.getLogger(ActivityHistograms.class.getName());
+
+	private static Configuration config = Config.getConfiguration();
+
+	/** First bytes of a snapshot file: "FHIS" */
+	private static final int SNAPSHOT_MAGIC = 0x46484953;
+
+	private static final int SNAPSHOT_VERSION = 1;
+
+	/**
+	 * Distribution of photos by slices of a value
+	 */
+	private static class Distrib
+	{
+		private int sliceSize;
+
+		/** Number of photos per slice */
+		private int[] counts;
+
+		/** Number of photos counted */
+		private int nbPhotos = 0;
+
+		Distrib(String sliceProperty, String nbSlicesProperty) {
+			sliceSize = config.getInt(sliceProperty);
+			counts = new int[config.getInt(nbSlicesProperty)];
+		}
+
+		/**
+		 * Count one photo in the slice that contains the given value
+		 */
+		void count(int value) {
+			// Calculate the slice in which this data should be counted
+			int sliceIndex = (int) ((float) value / sliceSize);
+
+			// Limit the max number of slices: any data over nbSlices*sliceSize will be in the last catch-all slice
+			if (sliceIndex > (counts.length - 1))
+				sliceIndex = counts.length - 1;
+			counts[sliceIndex]++;
+			nbPhotos++;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(sliceSize);
+			out.writeInt(counts.length);
+			for (int nb : counts)
+				out.writeInt(nb);
+			out.writeInt(nbPhotos);
+		}
+
+		/**
+		 * Read the counters saved by {@link #write(DataOutputStream)}
+		 *
+		 * @return false if they were computed with other slices than the current ones
+		 */
+		boolean read(DataInputStream in) throws IOException {
+			if (in.readInt() != sliceSize || in.readInt() != counts.length)
+				return false;
+			for (int i = 0; i < counts.length; i++)
+				counts[i] = in.readInt();
+			nbPhotos = in.readInt();
+			return true;
+		}
+
+		void merge(Distrib distrib) {
+			for (int i = 0; i < counts.length; i++)
+				counts[i] += distrib.counts[i];
+			nbPhotos += distrib.nbPhotos;
+		}
+
+		/**
+		 * Print the distribution as ratios of the number of photos counted, if any
+		 */
+		void print(PrintStream ps, String month) {
+			if (nbPhotos > 0) {
+				ps.print(month + "; ");
+				for (int nb : counts)
+					ps.print(ReportOutput.format4((float) nb / nbPhotos) + "; ");
+				ps.println();
+			}
+		}
+	}
+
+	private int nbPhotos = 0;
+
+	private Distrib groups = new Distrib("fm.flickr.stat.activity.distrib.group.slice", "fm.flickr.stat.activity.distrib.group.nbslices");
+
+	private Distrib views = new Distrib("fm.flickr.stat.activity.distrib.view.slice", "fm.flickr.stat.activity.distrib.view.nbslices");
+
+	private Distrib comments = new Distrib("fm.flickr.stat.activity.distrib.comment.slice", "fm.flickr.stat.activity.distrib.comment.nbslices");
+
+	private Distrib favs = new Distrib("fm.flickr.stat.activity.distrib.fav.slice", "fm.flickr.stat.activity.distrib.fav.nbslices");
+
+	private Distrib tags = new Distrib("fm.flickr.stat.activity.distrib.tag.slice", "fm.flickr.stat.activity.distrib.tag.nbslices");
+
+	/** Photos whose owner's data is unknown are not counted */
+	private Distrib ownersPhotos = new Distrib("fm.flickr.stat.activity.distrib.user_photo.slice", "fm.flickr.stat.activity.distrib.user.nbslices");
+
+	private Distrib ownersContacts = new Distrib("fm.flickr.stat.activity.distrib.user_contact.slice", "fm.flickr.stat.activity.distrib.user.nbslices");
+
+	/** Number of photos with a location */
+	private int nbLocated = 0;
+
+	/** Number of photos by post hour */
+	private int[] postHours = new int[24];
+
+	/** Number of photos whose post date is unknown or invalid */
+	private int nbInvalidDates = 0;
+
+	/**
+	 * Number of photos and contacts of each user, the last photo of a user gives its figures.
+	 * Note: until 11/2016, the ownder ID was not collected. Therefore duplicates were
+	 * counted as different users. This creates quite a difference starting at 12/2016.
+	 */
+	private HashMap<String, int[]> users = new HashMap<String, int[]>();
+
+	/**
+	 * Compute all the distributions in a single pass
+	 *
+	 * @param rows the activity data, read from the first row
+	 */
+	public ActivityHistograms(ActivityRows rows) {
+		rows.rewind();
+		while (rows.next()) {
+			nbPhotos++;
+			groups.count(rows.getGroups());
+			views.count(rows.getViews());
+			comments.count(rows.getComments());
+			// A "null" number of favs found in some files is read as 0
+			favs.count(rows.getFavs());
+			tags.count(rows.getTags());
+
+			int nbOwnersPhotos = rows.getOwnersPhotos();
+			int nbOwnersContacts = rows.getOwnersContacts();
+			if (nbOwnersPhotos != -1) {
+				ownersPhotos.count(nbOwnersPhotos);
+				ownersContacts.count(nbOwnersContacts);
+			}
+
+			if (rows.hasLocation())
+				nbLocated++;
+
+			long postDate = rows.getDatePost();
+			if (postDate == ActivityBinaryFile.NO_DATE)
+				nbInvalidDates++;
+			else
+				postHours[(int) (Math.floorMod(postDate, 86400L) / 3600)]++;
+
+			int[] user = users.get(rows.getOwnerNsid());
+			if (user == null) {
+				user = new int[2];
+				users.put(rows.getOwnerNsid(), user);
+			}
+			user[0] = nbOwnersPhotos;
+			user[1] = nbOwnersContacts;
+		}
+	}
+
+	/**
+	 * Empty distributions, in which other distributions can be merged
+	 */
+	public ActivityHistograms() {
+	}
+
+	/**
+	 * Add the distributions of another period, that follows the period of these distributions: the figures of the
+	 * users of the other period replace the current ones
+	 *
+	 * @param histograms distributions computed with the same slices
+	 */
+	public void merge(ActivityHistograms histograms) {
+		nbPhotos += histograms.nbPhotos;
+		Distrib[] distribs = getDistribs();
+		Distrib[] others = histograms.getDistribs();
+		for (int i = 0; i < distribs.length; i++)
+			distribs[i].merge(others[i]);
+		nbLocated += histograms.nbLocated;
+		for (int i = 0; i < postHours.length; i++)
+			postHours[i] += histograms.postHours[i];
+		nbInvalidDates += histograms.nbInvalidDates;
+		for (Map.Entry<String, int[]> user : histograms.users.entrySet())
+			users.put(user.getKey(), user.getValue().clone());
+	}
+
+	/**
+	 * Save the distributions into a snapshot file (see {@link Snapshots})
+	 *
+	 * @param file the snapshot file
+	 * @param signature signature of the data files the distributions were computed from
+	 */
+	public void write(File file, String signature) throws IOException {
+		File tmp = Snapshots.createTempFile(file);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeUTF(signature);
+			out.writeInt(nbPhotos);
+			for (Distrib distrib : getDistribs())
+				distrib.write(out);
+			out.writeInt(nbLocated);
+			for (int nb : postHours)
+				out.writeInt(nb);
+			out.writeInt(nbInvalidDates);
+			out.writeInt(users.size());
+			for (Map.Entry<String, int[]> user : users.entrySet()) {
+				out.writeUTF(user.getKey());
+				out.writeInt(user.getValue()[0]);
+				out.writeInt(user.getValue()[1]);
+			}
+		} finally {
+			out.close();
+		}
+		Snapshots.commit(tmp, file);
+	}
+
+	/**
+	 * Read the distributions saved into a snapshot file
+	 *
+	 * @param file the snapshot file
+	 * @param signature signature of the current data files
+	 * @return the distributions, or null if the file does not exist or was computed from other data files or
+	 * with other slices
+	 */
+	public static ActivityHistograms read(File file, String signature) {
+		if (!file.exists())
+			return null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION || !in.readUTF().equals(signature))
+					return null;
+
+				ActivityHistograms histograms = new ActivityHistograms();
+				histograms.nbPhotos = in.readInt();
+				for (Distrib distrib : histograms.getDistribs())
+					if (!distrib.read(in))
+						return null;
+				histograms.nbLocated = in.readInt();
+				for (int i = 0; i < histograms.postHours.length; i++)
+					histograms.postHours[i] = in.readInt();
+				histograms.nbInvalidDates = in.readInt();
+				int nbUsers = in.readInt();
+				for (int i = 0; i < nbUsers; i++) {
+					String nsid = in.readUTF();
+					histograms.users.put(nsid, new int[] { in.readInt(), in.readInt() });
+				}
+				return histograms;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			logger.warn("Cannot read snapshot " + file.getPath() + ". Exception: " + e.toString());
+			return null;
+		}
+	}
+
+	private Distrib[] getDistribs() {
+		return new Distrib[] { groups, views, comments, favs, tags, ownersPhotos, ownersContacts };
+	}
+
+	/**
+	 * @return number of photos counted
+	 */
+	public int getNbPhotos() {
+		return nbPhotos;
+	}
+
+	/**
+	 * @return number of photos whose post date is unknown or invalid
+	 */
+	public int getNbInvalidDates() {
+		return nbInvalidDates;
+	}
+
+	public void printDistribGroup(PrintStream ps, String month) {
+		groups.print(ps, month);
+	}
+
+	public void printDistribViews(PrintStream ps, String month) {
+		views.print(ps, month);
+	}
+
+	public void printDistribComments(PrintStream ps, String month) {
+		comments.print(ps, month);
+	}
+
+	public void printDistribFavs(PrintStream ps, String month) {
+		favs.print(ps, month);
+	}
+
+	public void printDistribTags(PrintStream ps, String month) {
+		tags.print(ps, month);
+	}
+
+	public void printDistribOwnersPhotos(PrintStream ps, String month) {
+		ownersPhotos.print(ps, month);
+	}
+
+	public void printDistribOwnersContacts(PrintStream ps, String month) {
+		ownersContacts.print(ps, month);
+	}
+
+	/**
+	 * Print the ratios of photos with and without location
+	 */
+	public void printDistribLocation(PrintStream ps, String month) {
+		if (nbPhotos > 0) {
+			ps.print(month + "; ");
+			ps.print(ReportOutput.format4((float) nbLocated / nbPhotos) + "; ");
+			ps.print(ReportOutput.format4((float) (nbPhotos - nbLocated) / nbPhotos) + "; ");
+			ps.println();
+		}
+	}
+
+	/**
+	 * Print the number of photos by post hour, from 0h to 23h
+	 */
+	public void printDistribPostTime(PrintStream ps, String month) {
+		ps.print(month + "; ");
+		for (int i = 0; i < 24; i++) {
+			ps.print(postHours[i]);
+			if (i < 24)
+				ps.print("; ");
+		}
+		ps.println();
+	}
+
+	/**
+	 * @return the number of photos by post hour: a vector of 24 values, one value by hour of the day
+	 */
+	public Vector<Integer> getPostTimeDistrib() {
+		Vector<Integer> distribution = new Vector<Integer>();
+		for (int i = 0; i < 24; i++)
+			distribution.add(postHours[i]);
+		return distribution;
+	}
+
+	/**
+	 * Print users' average, mean absolute difference and max number of contacts, then of photos
+	 */
+	public void printUserStat(PrintStream ps, String month) {
+		int nbEntries = nbPhotos;
+		if (nbEntries > 0) {
+			int sumPhotos = 0; // Sum of the number of photos of users
+			int maxPhotos = 0; // Maximum number of photos of users
+			int sumContacts = 0; // sum of the number of contacts of users
+			int maxContacts = 0; // max number of contacts of users
+
+			for (int[] user : users.values()) {
+				sumPhotos += user[0];
+				if (user[0] > maxPhotos)
+					maxPhotos = user[0];
+
+				sumContacts += user[1];
+				if (user[1] > maxContacts)
+					maxContacts = user[1];
+			}
+
+			ps.print(month + "; ");
+
+			// Calculate the  mean absolute difference of number of contacts
+			int avg = sumContacts / nbEntries;
+			int sumDeviations = 0;
+			for (int[] user : users.values())
+				sumDeviations += Math.abs(avg - user[1]);
+			ps.print(sumContacts / nbEntries + "; "); // average
+			ps.print(sumDeviations / nbEntries + "; "); //  mean absolute difference of number of contacts
+			ps.print(maxContacts + "; "); // Max number of contacts per user
+
+			// Calculate the  mean absolute difference of the number of photos
+			avg = sumPhotos / nbEntries;
+			sumDeviations = 0;
+			for (int[] user : users.values())
+				sumDeviations += Math.abs(avg - user[0]);
+			ps.print(sumPhotos / nbEntries + "; "); // Average number of photos per user
+			ps.print(sumDeviations / nbEntries + "; "); //  mean absolute difference of number of photos
+			ps.println(maxPhotos); // Max number of photos per user
+		}
+	}
+}
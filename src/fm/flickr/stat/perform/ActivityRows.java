@@ -0,0 +1,61 @@
+package fm.flickr.stat.perform;
+
+/**
+ * Sequential access to rows of activity data about photos, as saved by {@link ActivityStat}, without creating
+ * an object per row. The getters return the values of the current row.
+ * <p>
+ * Numbers that are missing or invalid in the data files are read as 0, except the owner's number of photos and
+ * contacts that are -1 when unknown.
+ * </p>
+ *
+ * @author fmichel
+ */
+public interface ActivityRows
+{
+	/**
+	 * @return number of rows
+	 */
+	int size();
+
+	/**
+	 * Go back before the first row
+	 */
+	void rewind();
+
+	/**
+	 * Move to the next row
+	 *
+	 * @return false if there is no more row
+	 */
+	boolean next();
+
+	int getViews();
+
+	int getComments();
+
+	int getFavs();
+
+	int getGroups();
+
+	int getTags();
+
+	int getOwnersPhotos();
+
+	int getOwnersContacts();
+
+	/**
+	 * @return owner's user id, empty string if unknown
+	 */
+	String getOwnerNsid();
+
+	/**
+	 * @return true if the photo has a longitude and a latitude
+	 */
+	boolean hasLocation();
+
+	/**
+	 * @return post date and time as the number of seconds from 1970-01-01 00:00:00 to the local date and time
+	 * written in the data files, or {@link ActivityBinaryFile#NO_DATE} if unknown
+	 */
+	long getDatePost();
+}
@@ -8,37 +8,32 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
-import java.util.Date;
-import java.util.GregorianCalendar;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Vector;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.log4j.Logger;
 
-import fm.flickr.api.wrapper.service.FlickrService;
-import fm.flickr.api.wrapper.service.param.GroupItemsSet;
 import fm.flickr.api.wrapper.service.param.Location;
-import fm.flickr.api.wrapper.service.param.PhotoItem;
 import fm.flickr.api.wrapper.service.param.PhotoItemInfo;
 import fm.flickr.api.wrapper.service.param.PhotoItemsSet;
 import fm.flickr.api.wrapper.service.param.UserInfo;
 import fm.flickr.api.wrapper.util.ServiceException;
+import fm.flickr.stat.param.PhotoRecord;
 import fm.util.Config;
 
 /**
  * Manage the information about the activity on photos: number of views, comments, notes, favorites,
  * groups, tags, post date and time, ownver's number of photos and contacts.
  * 
- * This class provides methods to collect data about photos, and save data to csv files.
- * Additional methods reload csv files and compute statistics:
+ * This class provides methods to collect data about photos, and save data to csv files and/or to binary files
+ * (see {@link ActivityBinaryFile}) depending on property 'fm.flickr.stat.activity.format'.
+ * Additional methods reload these files and compute statistics:
  * compute the distribution of photos by nb of views, comments, tags etc.
  *
  * @author fmichel
@@ -50,14 +45,22 @@ public class ActivityStat
 
 	private static Configuration config = Config.getConfiguration();
 
-	private static FlickrService service = new FlickrService();
-
 	private static String FIELD_SEPARATOR = ";";
 
-	/** Vector in which all data files are loaded for processing */
-	private Vector<PhotoItemInfo> statistics = new Vector<PhotoItemInfo>();
+	/**
+	 * When on, data files are mapped in memory and scanned in place by the statistics computations instead of
+	 * being loaded, so that the heap use does not depend on the length of the period processed
+	 */
+	private static final boolean MAPPED = config.getString("fm.flickr.stat.activity.mapped", "off").equals("on");
+
+	/** Table in which all data files are loaded for processing */
+	private PhotoActivityTable statistics = new PhotoActivityTable();
 
-	private static SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+	/** Data files mapped in memory, when property 'fm.flickr.stat.activity.mapped' is on */
+	private Vector<ActivityRows> mappedFiles = new Vector<ActivityRows>();
+
+	/** Distributions of the data loaded, null until they are computed */
+	private ActivityHistograms histograms = null;
 
 	/**
 	 * <p>Retrieve detailed information for each photo passed in parameter, as well
@@ -69,59 +72,44 @@ public class ActivityStat
 	 * @throws IOException in case the file can't be saved
 	 */
 	public static void collecAdditionalData(File outputFile, String date, PhotoItemsSet photos) throws IOException {
+		collecAdditionalData(outputFile, date, PhotoRecordFetcher.fetch(photos, false, false, true));
+	}
+
+	/**
+	 * <p>Save the detailed information of each photo and of its owner, collected beforehand by the 
+	 * {@link PhotoRecordFetcher}. The results are saved to the file denoted by outputFile, in the
+	 * Interestingness rank order.</p>
+	 * <p>Photos whose info or owner's info could not be retrieved are ignored.</p>
+	 * 
+	 * @param outputFile file where to write the data collected
+	 * @param date date of photos read, given in format "YYY-MM-DD"
+	 * @param records data collected about each photo
+	 * @throws IOException in case the file can't be saved
+	 */
+	public static void collecAdditionalData(File outputFile, String date, List<PhotoRecord> records) throws IOException {
 
-		HashMap<String, PhotoItemInfo> collectedPhoto = new HashMap<String, PhotoItemInfo>();
+		LinkedHashMap<String, PhotoItemInfo> collectedPhoto = new LinkedHashMap<String, PhotoItemInfo>();
 		HashMap<String, UserInfo> collectedUser = new HashMap<String, UserInfo>();
-		int nbPhotosProcessed = 0; // Number of photos collected during the whole process
-
-		// Loop on all photos
-		for (PhotoItem photo : photos.getPhotosList()) {
-
-			// Read photo infos inluding nb of comments and notes
-			logger.trace("Getting info for photo " + photo.getPhotoId());
-			PhotoItemInfo photoInfo = service.getPhotoInfo(photo.getPhotoId());
-			if (photoInfo != null) {
-				if (collectedPhoto.containsKey(photo.getPhotoId()))
-					// This case is unexpected when the photos are taken from Interestingess, but it may occur
-					// when their ids are read from a file.
-					logger.warn("######## Photo " + photo.getPhotoId() + " has already been treated. Skipping it.");
-				else {
-					nbPhotosProcessed++;
-					photoInfo.setInterestingnessRank(photo.getInterestingnessRank());
-					String nbFavs = service.getNbFavs(photo.getPhotoId()); // Read the number of favs
-					if (nbFavs != null)
-						photoInfo.setNbFavs(nbFavs);
-					else
-						photoInfo.setNbFavs("0");
-
-					GroupItemsSet grpSet = service.getPhotoPools(photo.getPhotoId()); // Read the number of groups
-					if (grpSet != null)
-						photoInfo.setNbGroups(String.valueOf(grpSet.size()));
-					else
-						photoInfo.setNbGroups("0");
-
-					// Read info about the owner of the photo
-					logger.trace("Getting info for user " + photoInfo.getOwnerNsid());
-					UserInfo userInfo = service.getUserInfo(photoInfo.getOwnerNsid());
-					if (userInfo != null) {
-						collectedUser.put(photo.getPhotoId(), userInfo);
-						collectedPhoto.put(photo.getPhotoId(), photoInfo);
-					}
-				}
-			}
 
-			// Trace activity every 10 photos
-			if (nbPhotosProcessed % 10 == 0)
-				logger.info("Processed " + nbPhotosProcessed + " photos.");
-			else
-				logger.debug("Processed " + nbPhotosProcessed + " photos.");
+		for (PhotoRecord record : records) {
+			PhotoItemInfo photoInfo = record.getPhotoInfo();
+			if (photoInfo != null && record.getUserInfo() != null) {
+				photoInfo.setInterestingnessRank(record.getPhoto().getInterestingnessRank());
 
-			// Sleep between each photo... just not to be overloading
-			try {
-				Thread.sleep(config.getInt("fm.flickr.stat.sleepms"));
-			} catch (InterruptedException e) {
-				logger.warn("Unepected interruption: " + e.toString());
-				e.printStackTrace();
+				// Number of favs
+				if (record.getNbFavs() != null)
+					photoInfo.setNbFavs(record.getNbFavs());
+				else
+					photoInfo.setNbFavs("0");
+
+				// Number of groups
+				if (record.getGroupsSet() != null)
+					photoInfo.setNbGroups(String.valueOf(record.getGroupsSet().size()));
+				else
+					photoInfo.setNbGroups("0");
+
+				collectedPhoto.put(record.getPhotoId(), photoInfo);
+				collectedUser.put(record.getPhotoId(), record.getUserInfo());
 			}
 		}
 
@@ -130,15 +118,45 @@ public class ActivityStat
 	}
 
 	/**
-	 * Save the information collected for a given date into the CSV file denoted by outputFile
+	 * Save the information collected for a given date into the CSV file denoted by outputFile, and/or into the
+	 * binary file with the same name and extension {@link ActivityBinaryFile#EXTENSION}
 	 * 
 	 * @param outputFile file where to write the data collected
-	 * @param photos map of photos information. The key is the photo id.
+	 * @param photos map of photos information in the order they must be written. The key is the photo id.
 	 * @param users maps of information about photo owners. The key is the photo id.
 	 * @throws IOException
 	 */
 	private static void savePhotosActivity(File outputFile, HashMap<String, PhotoItemInfo> photos, HashMap<String, UserInfo> users) throws IOException {
 
+		// Copy the owner's data into the photos information
+		for (PhotoItemInfo entry : photos.values()) {
+			UserInfo user = users.get(entry.getPhotoId());
+			entry.setNbTags(entry.getTagsSet().size());
+			entry.setOwnersPhotos(user.getPhotosCount());
+			entry.setOwnersContacts(user.getNumberOfContacts());
+			entry.setOwnerNsid(user.getUserId());
+			entry.setOwnerPro(user.isPro());
+		}
+
+		String format = config.getString("fm.flickr.stat.activity.format", "csv");
+		if (!format.equals("bin"))
+			savePhotosActivityCsv(outputFile, photos.values());
+		if (!format.equals("csv")) {
+			File binFile = getBinaryFile(outputFile);
+			logger.info("Saving activity info about " + photos.size() + " photos into file " + binFile.getCanonicalPath());
+			ActivityBinaryFile.write(binFile, new ArrayList<PhotoItemInfo>(photos.values()));
+		}
+	}
+
+	/**
+	 * Save the information collected for a given date into the CSV file denoted by outputFile
+	 * 
+	 * @param outputFile file where to write the data collected
+	 * @param photos photos information in the order they must be written, with the owner's information set
+	 * @throws IOException
+	 */
+	private static void savePhotosActivityCsv(File outputFile, Collection<PhotoItemInfo> photos) throws IOException {
+
 		FileOutputStream fos = new FileOutputStream(outputFile);
 		PrintWriter writer = new PrintWriter(fos);
 		logger.info("Saving activity info about " + photos.size() + " photos into file " + outputFile.getCanonicalPath());
@@ -146,25 +164,22 @@ public class ActivityStat
 		writer.println("# Number of photos processed: " + photos.size());
 		writer.println("# photo id ; rank ; views ; comments ; favs ; notes; groups; tags; upload_date_time; owner's photos; onwer's contacts; owner's userid; longitude; latitude; country; take_date_time; is_pro_user");
 
-		Collection<PhotoItemInfo> photoItemInfo = photos.values();
-		Iterator<PhotoItemInfo> iter = photoItemInfo.iterator();
-		while (iter.hasNext()) {
-			PhotoItemInfo entry = iter.next();
+		for (PhotoItemInfo entry : photos) {
 			// Photo ID; Rank; Views;
 			writer.print(entry.getPhotoId() + FIELD_SEPARATOR + entry.getInterestingnessRank() + FIELD_SEPARATOR + entry.getNbViews());
 			// Comments; Favs; Notes;
 			writer.print(FIELD_SEPARATOR + entry.getNbComments() + FIELD_SEPARATOR + entry.getNbFavs() + FIELD_SEPARATOR + entry.getNbNotes());
 			// Groups; Tags;
-			writer.print(FIELD_SEPARATOR + entry.getNbGroups() + FIELD_SEPARATOR + entry.getTagsSet().size());
+			writer.print(FIELD_SEPARATOR + entry.getNbGroups() + FIELD_SEPARATOR + entry.getNbTags());
 			// Uploaded date/time
 			writer.print(FIELD_SEPARATOR + entry.getDatePost());
 
 			// Owner's nb of photos
-			writer.print(FIELD_SEPARATOR + users.get(entry.getPhotoId()).getPhotosCount());
+			writer.print(FIELD_SEPARATOR + entry.getOwnersPhotos());
 			// Owner's nb of contacts
-			writer.print(FIELD_SEPARATOR + users.get(entry.getPhotoId()).getNumberOfContacts());
+			writer.print(FIELD_SEPARATOR + entry.getOwnersContacts());
 			// Owner's user id
-			writer.print(FIELD_SEPARATOR + users.get(entry.getPhotoId()).getUserId());
+			writer.print(FIELD_SEPARATOR + entry.getOwnerNsid());
 
 			// Location
 			writer.print(FIELD_SEPARATOR + entry.getLocation().getLongitude());
@@ -175,7 +190,7 @@ public class ActivityStat
 			writer.print(FIELD_SEPARATOR + entry.getDateTake());
 
 			// Is user pro
-			writer.print(FIELD_SEPARATOR + users.get(entry.getPhotoId()).isPro());
+			writer.print(FIELD_SEPARATOR + entry.isOwnerPro());
 
 			writer.println();
 		}
@@ -184,6 +199,27 @@ public class ActivityStat
 		fos.close();
 	}
 
+	/**
+	 * @param csvFile a daily csv file
+	 * @return the binary file of the same day, that may not exist
+	 */
+	public static File getBinaryFile(File csvFile) {
+		String name = csvFile.getName();
+		if (name.endsWith(".csv"))
+			name = name.substring(0, name.length() - 4);
+		return new File(csvFile.getParentFile(), name + ActivityBinaryFile.EXTENSION);
+	}
+
+	/**
+	 * @param csvFile a daily csv file
+	 * @return true if the binary file of the same day exists and is at least as recent as the csv file,
+	 * in which case it is loaded instead of the csv file
+	 */
+	private static boolean hasBinaryFile(File csvFile) {
+		File binFile = getBinaryFile(csvFile);
+		return binFile.exists() && binFile.lastModified() >= csvFile.lastModified();
+	}
+
 	/**
 	 * Load the content of the file for the given date, into the map of statistics
 	 * 
@@ -191,9 +227,82 @@ public class ActivityStat
 	 * @param date date of data collected from Interestingness, given in format "YYY-MM-DD"
 	 */
 	public void loadFileByDay(String date, String folder) throws ServiceException {
-		String fileName = folder + File.separator + date + ".csv";
-		loadFile(new File(fileName));
-		logger.info("### " + statistics.size() + " photos activity loaded.");
+		File file = getDailyFile(date, folder);
+		if (Snapshots.isEnabled()) {
+			// Merge the summary of the day instead of loading its rows
+			ActivityHistograms summary = getDailySummary(file, date, folder);
+			if (summary != null)
+				getHistograms().merge(summary);
+			logger.info("### " + getHistograms().getNbPhotos() + " photos activity loaded.");
+			return;
+		}
+
+		loadFile(file);
+		logger.info("### " + getRows().size() + " photos activity loaded.");
+	}
+
+	/**
+	 * @return the file of the given date, csv or binary
+	 */
+	private static File getDailyFile(String date, String folder) {
+		File file = DailyFiles.findFile(folder, date, ".csv");
+		if (hasBinaryFile(file))
+			return getBinaryFile(file);
+		if (!file.exists())
+			return DailyFiles.findFile(folder, date, ActivityBinaryFile.EXTENSION);
+		return file;
+	}
+
+	/**
+	 * Save the summary of the given date if snapshots are used, so that it is ready for ComputeStatsTimeframe
+	 * 
+	 * @param date date formatted as yyyy-mm-dd
+	 * @param folder where the data files are located
+	 */
+	public static void saveDailySummary(String date, String folder) {
+		if (Snapshots.isEnabled()) {
+			try {
+				getDailySummary(getDailyFile(date, folder), date, folder);
+			} catch (ServiceException e) {
+				logger.warn("Cannot save the summary of " + date + ". Exception: " + e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Return the distributions of one day. They are read from the summary of the day if it is up to date,
+	 * otherwise they are computed from the daily file and saved as the summary of the day.
+	 * 
+	 * @param file daily file, csv or binary
+	 * @param date date of the file, formatted as yyyy-mm-dd
+	 * @param folder where the data files are located
+	 * @return null if the file does not exist
+	 */
+	private static ActivityHistograms getDailySummary(File file, String date, String folder) throws ServiceException {
+		if (!file.exists()) {
+			logger.warn("No file: " + file.getAbsolutePath());
+			return null;
+		}
+
+		File summary = Snapshots.getFile(new File(folder), date, ".hist");
+		String signature = Snapshots.getSignature(Collections.singletonList(file), "");
+		ActivityHistograms histograms = ActivityHistograms.read(summary, signature);
+		if (histograms == null) {
+			logger.info("### Summarizing file " + file.getAbsolutePath());
+			try {
+				histograms = new ActivityHistograms(mapFile(file));
+			} catch (IOException e) {
+				String errMsg = "Error when reading file " + file.getName() + ". Exception: " + e.toString();
+				logger.warn(errMsg);
+				throw new ServiceException(errMsg);
+			}
+			try {
+				histograms.write(summary, signature);
+			} catch (IOException e) {
+				logger.warn("Cannot save snapshot " + summary.getPath() + ". Exception: " + e.toString());
+			}
+		}
+		return histograms;
 	}
 
 	/**
@@ -205,6 +314,8 @@ public class ActivityStat
 	public void loadFilesByMonth(String yearMonth, String folder) throws ServiceException {
 		// Clear the current data if any
 		statistics.clear();
+		mappedFiles.clear();
+		histograms = null;
 
 		File dir = new File(folder);
 		if (!dir.exists() || !dir.isDirectory()) {
@@ -213,27 +324,129 @@ public class ActivityStat
 			throw new ServiceException(errMsg);
 		}
 
-		for (File file : dir.listFiles())
-			if (file.getName().startsWith(yearMonth))
-				loadFile(file);
+		// Each day may have a csv file, a binary file or both: the binary file is preferred when up to date
+		List<File> files = new ArrayList<File>();
+		for (File file : DailyFiles.listFiles(dir, yearMonth)) {
+			if (file.getName().endsWith(ActivityBinaryFile.EXTENSION)) {
+				File csvFile = new File(file.getParentFile(), file.getName().replace(ActivityBinaryFile.EXTENSION, ".csv"));
+				if (!csvFile.exists() || hasBinaryFile(csvFile))
+					files.add(file);
+			} else if (!hasBinaryFile(file))
+				files.add(file);
+		}
+
+		// Load the distributions of the month from its snapshot if the daily files have not changed since it was saved
+		File snapshot = Snapshots.getFile(dir, yearMonth, ".hist");
+		String signature = Snapshots.getSignature(files, "");
+		if (Snapshots.isEnabled()) {
+			histograms = ActivityHistograms.read(snapshot, signature);
+			if (histograms != null) {
+				logger.info("### " + histograms.getNbPhotos() + " total photos activity loaded for period " + yearMonth + " from snapshot");
+				return;
+			}
+		}
+
+		// Read the days concurrently, then add them in chronological order
+		List<ActivityRows> days = ParallelFileLoader.parse(files, new ParallelFileLoader.FileParser<ActivityRows>() {
+			public ActivityRows parse(File file) throws ServiceException {
+				return readFile(file);
+			}
+		});
+		for (ActivityRows day : days)
+			addRows(day);
+
+		logger.info("### " + getRows().size() + " total photos activity loaded for period " + yearMonth);
 
-		logger.info("### " + statistics.size() + " total photos activity loaded for period " + yearMonth);
+		if (Snapshots.isEnabled() && !files.isEmpty()) {
+			try {
+				getHistograms().write(snapshot, signature);
+			} catch (IOException e) {
+				logger.warn("Cannot save snapshot " + snapshot.getPath() + ". Exception: " + e.toString());
+			}
+		}
 	}
 
 	/** 
-	* Parse the content of the given file and store its content into the map statistics
+	* Parse the content of the given file, csv or binary, and store its content into the map statistics
 	* @param file  
 	*/
 	private void loadFile(File file) throws ServiceException {
+		addRows(readFile(file));
+	}
+
+	/**
+	 * Add the rows of one file to the data loaded
+	 * 
+	 * @param rows rows returned by {@link #readFile(File)}, null if the file does not exist
+	 */
+	private void addRows(ActivityRows rows) {
+		if (rows == null)
+			return;
+		histograms = null;
+		if (MAPPED)
+			mappedFiles.add(rows);
+		else
+			statistics.addAll(rows);
+	}
+
+	/**
+	 * Read one file, csv or binary. This method may be called concurrently for different files.
+	 * 
+	 * @param file the file of one day
+	 * @return the rows of the file mapped in memory, or loaded in their own table when the data is not mapped.
+	 * Null if the file does not exist.
+	 */
+	private static ActivityRows readFile(File file) throws ServiceException {
+		if (!file.exists()) {
+			logger.warn("No file: " + file.getAbsolutePath());
+			return null;
+		}
+
+		logger.info("### Loading file " + file.getAbsolutePath());
 		try {
-			if (!file.exists()) {
-				logger.warn("No file: " + file.getAbsolutePath());
-				return;
-			}
+			ActivityRows rows = mapFile(file);
+			if (MAPPED)
+				return rows;
+			PhotoActivityTable table = new PhotoActivityTable();
+			table.addAll(rows);
+			return table.rows();
+		} catch (IOException e) {
+			String errMsg = "Error when reading file " + file.getName() + ". Exception: " + e.toString();
+			logger.warn(errMsg);
+			throw new ServiceException(errMsg);
+		}
+	}
 
+	/**
+	 * Map a file in memory, csv or binary
+	 */
+	private static ActivityRows mapFile(File file) throws IOException {
+		if (file.getName().endsWith(ActivityBinaryFile.EXTENSION))
+			return ActivityBinaryFile.map(file);
+		return ActivityCsvRows.map(file);
+	}
+
+	/**
+	 * @return the rows of all the data loaded, either in the statistics vector or in mapped files
+	 */
+	private ActivityRows getRows() {
+		Vector<ActivityRows> rows = new Vector<ActivityRows>();
+		if (statistics.size() > 0)
+			rows.add(statistics.rows());
+		rows.addAll(mappedFiles);
+		return new ChainedRows(rows);
+	}
+
+	/** 
+	* Parse the content of the given csv file
+	* @param file the csv file of one day
+	* @return photos information in the order of the file
+	*/
+	public static List<PhotoItemInfo> readCsvFile(File file) throws ServiceException {
+		List<PhotoItemInfo> photos = new ArrayList<PhotoItemInfo>();
+		try {
 			FileInputStream fis = new FileInputStream(file);
 			BufferedReader buffer = new BufferedReader(new InputStreamReader(fis));
-			logger.info("### Loading file " + file.getAbsolutePath());
 
 			String str = buffer.readLine();
 			while (str != null) {
@@ -283,19 +496,20 @@ public class ActivityStat
 							inf.setLocation(new Location("", "", ""));
 
 						// Date taken - introduced in April 2018
-						if (tokens.length > 16)
-							inf.setDateTake(tokens[16]);
+						if (tokens.length > 15)
+							inf.setDateTake(tokens[15]);
 
 						// Pro user: added 2019-10-07
-						if (tokens.length > 17)
-							inf.setOwnerPro("true".equals(tokens[17]));
+						if (tokens.length > 16)
+							inf.setOwnerPro("true".equals(tokens[16]));
 
-						statistics.add(inf);
+						photos.add(inf);
 					}
 				}
 				str = buffer.readLine();
 			}
 			fis.close();
+			return photos;
 
 		} catch (IOException e) {
 			String errMsg = "Error when reading file " + file.getName() + ". Exception: " + e.toString();
@@ -320,44 +534,26 @@ public class ActivityStat
 
 	/**
 	 * Print the distribution of number of photos by number of groups they belong to
+	 * 
 	 * @param ps where to print the output
 	 * @param month in case of processing data by month, this string denotes the current month formatted as yyyy-mm.
 	 * It may also be used to denote another category like "explored photos, "any other photos". Cannot be null.
 	 */
 	public void computeDistribGroup(PrintStream ps, String month) {
 		logger.info("Computing distribution of photos by number of groups");
-		int nbPhotos = statistics.size();
-		int sliceSize = config.getInt("fm.flickr.stat.activity.distrib.group.slice");
-		int nbSlices = config.getInt("fm.flickr.stat.activity.distrib.group.nbslices");
-		logger.debug("sliceSize: " + sliceSize + ", nbSlices: " + nbSlices + ", nbPhotos: " + nbPhotos);
-
-		if (nbPhotos > 0) {
-			Vector<Float> dataToDistribute = new Vector<Float>();
-			for (PhotoItemInfo inf : statistics)
-				dataToDistribute.add(Float.valueOf(inf.getNbGroups()));
-			computeDistrib(ps, month, sliceSize, nbSlices, dataToDistribute);
-		}
+		getHistograms().printDistribGroup(ps, month);
 	}
 
 	/**
 	 * Print the distribution of number of photos by number of times they have been viewed
+	 * 
 	 * @param ps where to print the output
 	 * @param month in case of processing data by month, this string denotes the current month formatted as yyyy-mm.
 	 * It may also be used to denote another category like "explored photos, "any other photos". Cannot be null.
 	 */
 	public void computeDistribViews(PrintStream ps, String month) {
 		logger.info("Computing distribution of photos by number of views");
-		int nbPhotos = statistics.size();
-		int sliceSize = config.getInt("fm.flickr.stat.activity.distrib.view.slice");
-		int nbSlices = config.getInt("fm.flickr.stat.activity.distrib.view.nbslices");
-		logger.debug("sliceSize: " + sliceSize + ", nbSlices: " + nbSlices + ", nbPhotos: " + nbPhotos);
-
-		if (nbPhotos > 0) {
-			Vector<Float> dataToDistribute = new Vector<Float>();
-			for (PhotoItemInfo inf : statistics)
-				dataToDistribute.add(Float.valueOf(inf.getNbViews()));
-			computeDistrib(ps, month, sliceSize, nbSlices, dataToDistribute);
-		}
+		getHistograms().printDistribViews(ps, month);
 	}
 
 	/**
@@ -369,17 +565,7 @@ public class ActivityStat
 	 */
 	public void computeDistribComments(PrintStream ps, String month) {
 		logger.info("Computing distribution of photos by number of comments");
-		int nbPhotos = statistics.size();
-		int sliceSize = config.getInt("fm.flickr.stat.activity.distrib.comment.slice");
-		int nbSlices = config.getInt("fm.flickr.stat.activity.distrib.comment.nbslices");
-		logger.debug("sliceSize: " + sliceSize + ", nbSlices: " + nbSlices + ", nbPhotos: " + nbPhotos);
-
-		if (nbPhotos > 0) {
-			Vector<Float> dataToDistribute = new Vector<Float>();
-			for (PhotoItemInfo inf : statistics)
-				dataToDistribute.add(Float.valueOf(inf.getNbComments()));
-			computeDistrib(ps, month, sliceSize, nbSlices, dataToDistribute);
-		}
+		getHistograms().printDistribComments(ps, month);
 	}
 
 	/**
@@ -391,24 +577,7 @@ public class ActivityStat
 	 */
 	public void computeDistribFavs(PrintStream ps, String month) {
 		logger.info("Computing distribution of photos by number of favs");
-		int nbPhotos = statistics.size();
-		int sliceSize = config.getInt("fm.flickr.stat.activity.distrib.fav.slice");
-		int nbSlices = config.getInt("fm.flickr.stat.activity.distrib.fav.nbslices");
-		logger.debug("sliceSize: " + sliceSize + ", nbSlices: " + nbSlices + ", nbPhotos: " + nbPhotos);
-
-		if (nbPhotos > 0) {
-			Vector<Float> dataToDistribute = new Vector<Float>();
-			for (PhotoItemInfo inf : statistics) {
-				if (inf.getNbFavs().equals("null")) {
-					// workaround for an unexplained bug
-					logger.warn("null string in: " + inf.toString());
-					inf.setNbFavs("0");
-				}
-				dataToDistribute.add(Float.valueOf(inf.getNbFavs()));
-			}
-
-			computeDistrib(ps, month, sliceSize, nbSlices, dataToDistribute);
-		}
+		getHistograms().printDistribFavs(ps, month);
 	}
 
 	/**
@@ -419,18 +588,8 @@ public class ActivityStat
 	 * It may also be used to denote another category like "explored photos, "any other photos". Cannot be null.
 	 */
 	public void computeDistribTags(PrintStream ps, String month) {
-		logger.info("Computing distribution of photos by number of favs");
-		int nbPhotos = statistics.size();
-		int sliceSize = config.getInt("fm.flickr.stat.activity.distrib.tag.slice");
-		int nbSlices = config.getInt("fm.flickr.stat.activity.distrib.tag.nbslices");
-		logger.debug("sliceSize: " + sliceSize + ", nbSlices: " + nbSlices + ", nbPhotos: " + nbPhotos);
-
-		if (nbPhotos > 0) {
-			Vector<Float> dataToDistribute = new Vector<Float>();
-			for (PhotoItemInfo inf : statistics)
-				dataToDistribute.add(Float.valueOf(inf.getNbTags()));
-			computeDistrib(ps, month, sliceSize, nbSlices, dataToDistribute);
-		}
+		logger.info("Computing distribution of photos by number of tags");
+		getHistograms().printDistribTags(ps, month);
 	}
 
 	/**
@@ -442,18 +601,7 @@ public class ActivityStat
 	 */
 	public void computeDistribOwnersPhotos(PrintStream ps, String month) {
 		logger.info("Computing distribution of photos by number of photos of its owner");
-		int nbPhotos = statistics.size();
-		int sliceSize = config.getInt("fm.flickr.stat.activity.distrib.user_photo.slice");
-		int nbSlices = config.getInt("fm.flickr.stat.activity.distrib.user.nbslices");
-		logger.debug("sliceSize: " + sliceSize + ", nbSlices: " + nbSlices + ", nbPhotos: " + nbPhotos);
-
-		if (nbPhotos > 0) {
-			Vector<Float> dataToDistribute = new Vector<Float>();
-			for (PhotoItemInfo inf : statistics)
-				if (inf.getOwnersPhotos() != -1)
-					dataToDistribute.add(Float.valueOf(inf.getOwnersPhotos()));
-			computeDistrib(ps, month, sliceSize, nbSlices, dataToDistribute);
-		}
+		getHistograms().printDistribOwnersPhotos(ps, month);
 	}
 
 	/**
@@ -465,18 +613,7 @@ public class ActivityStat
 	 */
 	public void computeDistribOwnersContacts(PrintStream ps, String month) {
 		logger.info("Computing distribution of photos by number of contacts of its owner");
-		int nbPhotos = statistics.size();
-		int sliceSize = config.getInt("fm.flickr.stat.activity.distrib.user_contact.slice");
-		int nbSlices = config.getInt("fm.flickr.stat.activity.distrib.user.nbslices");
-		logger.debug("sliceSize: " + sliceSize + ", nbSlices: " + nbSlices + ", nbPhotos: " + nbPhotos);
-
-		if (nbPhotos > 0) {
-			Vector<Float> dataToDistribute = new Vector<Float>();
-			for (PhotoItemInfo inf : statistics)
-				if (inf.getOwnersPhotos() != -1)
-					dataToDistribute.add(Float.valueOf(inf.getOwnersContacts()));
-			computeDistrib(ps, month, sliceSize, nbSlices, dataToDistribute);
-		}
+		getHistograms().printDistribOwnersContacts(ps, month);
 	}
 
 	/**
@@ -495,27 +632,8 @@ public class ActivityStat
 	 * It may also be used to denote another category like "explored photos, "any other photos". Cannot be null.
 	 */
 	public void computeDistribLocation(PrintStream ps, String month) {
-		logger.info("Computing distribution of photos by number of favs");
-
-		int nbPhotos = statistics.size();
-		if (nbPhotos > 0) {
-			int nbYes = 0;
-			int nbNo = 0;
-
-			for (PhotoItemInfo inf : statistics)
-				if (inf.getLocation() != null)
-					if (inf.getLocation().isSet())
-						nbYes++;
-					else
-						nbNo++;
-				else
-					nbNo++;
-
-			ps.print(month + "; ");
-			ps.printf("%2.4f; ", (float) nbYes / nbPhotos);
-			ps.printf("%2.4f; ", (float) nbNo / nbPhotos);
-			ps.println();
-		}
+		logger.info("Computing distribution of photos by location");
+		getHistograms().printDistribLocation(ps, month);
 	}
 
 	/**
@@ -536,40 +654,10 @@ public class ActivityStat
 	 */
 	public void computeDistribPostTime(PrintStream ps, String month) {
 		logger.info("Computing statistincs of post time distribution by hour of day");
-
-		// Build the list of post dates 
-		List<Date> statPostTimeDate = new ArrayList<Date>();
-		for (PhotoItemInfo inf : statistics) {
-			try {
-				Date postDate = sdf.parse(inf.getDatePost());
-				statPostTimeDate.add(postDate);
-			} catch (ParseException e) {
-				logger.warn("Invalid date format. Exception: " + e.toString());
-			}
-		}
-
-		// Calculate the distribution of post times on 24h
-		GregorianCalendar cal = new GregorianCalendar();
-		Vector<Integer> distribution = new Vector<Integer>();
-
-		// Init the distribution
-		for (int i = 0; i < 24; i++)
-			distribution.add(0);
-
-		for (Date date : statPostTimeDate) {
-			cal.setTime(date);
-			int hour = cal.get(Calendar.HOUR_OF_DAY);
-			distribution.set(hour, distribution.get(hour) + 1);
-		}
-
-		// Print the results cut down by hour of day, from 0h to 23h
-		ps.print(month + "; ");
-		for (int i = 0; i < 24; i++) {
-			ps.print(distribution.get(i));
-			if (i < 24)
-				ps.print("; ");
-		}
-		ps.println();
+		ActivityHistograms histograms = getHistograms();
+		if (histograms.getNbInvalidDates() > 0)
+			logger.warn("Invalid date format: " + histograms.getNbInvalidDates() + " photos ignored.");
+		histograms.printDistribPostTime(ps, month);
 	}
 
 	/**
@@ -590,130 +678,113 @@ public class ActivityStat
 	 */
 	public void computeUserStat(PrintStream ps, String month) {
 		logger.info("Computing users' average number of photos and contacts");
-
-		int nbEntries = statistics.size();
-		if (nbEntries > 0) {
-			int sumPhotos = 0; // Sum of the number of photos of users
-			int maxPhotos = 0; // Maximum number of photos of users
-			int sumContacts = 0; // sum of the number of contacts of users
-			int maxContacts = 0; // max number of contacts of users
-
-			// Build the list of users (the map is used to eliminate duplicates)
-			// Note: until 11/2016, the ownder ID was not collected. Therefore duplicates were
-			// counted as different users. This creates quite a difference starting at 12/2016.
-			HashMap<String, UserInfo> usrMap = new HashMap<String, UserInfo>();
-			for (PhotoItemInfo inf : statistics) {
-				UserInfo usrInfo = new UserInfo();
-				usrInfo.setUserId(inf.getOwnerNsid());
-				usrInfo.setPhotosCount(inf.getOwnersPhotos());
-				usrInfo.setNumberOfContacts(inf.getOwnersContacts());
-				usrMap.put(inf.getOwnerNsid(), usrInfo);
-			}
-
-			Collection<UserInfo> usrList = usrMap.values();
-			for (UserInfo usrInfo : usrList) {
-				int nbPhotos = Integer.valueOf(usrInfo.getPhotosCount());
-				sumPhotos += nbPhotos;
-				if (nbPhotos > maxPhotos)
-					maxPhotos = nbPhotos;
-
-				int nbContacts = Integer.valueOf(usrInfo.getNumberOfContacts());
-				sumContacts += nbContacts;
-				if (nbContacts > maxContacts)
-					maxContacts = nbContacts;
-			}
-
-			ps.print(month + "; ");
-
-			// Calculate the  mean absolute difference of number of contacts
-			int avg = sumContacts / nbEntries;
-			int sumDeviations = 0;
-			for (UserInfo inf : usrList)
-				sumDeviations += Math.abs(avg - inf.getNumberOfContacts());
-			ps.print(sumContacts / nbEntries + "; "); // average
-			ps.print(sumDeviations / nbEntries + "; "); //  mean absolute difference of number of contacts
-			ps.print(maxContacts + "; "); // Max number of contacts per user
-
-			// Calculate the  mean absolute difference of the number of photos
-			avg = sumPhotos / nbEntries;
-			sumDeviations = 0;
-			for (UserInfo inf : usrList)
-				sumDeviations += Math.abs(avg - Integer.valueOf(inf.getPhotosCount()));
-			ps.print(sumPhotos / nbEntries + "; "); // Average number of photos per user
-			ps.print(sumDeviations / nbEntries + "; "); //  mean absolute difference of number of photos
-			ps.println(maxPhotos); // Max number of photos per user
-		}
+		getHistograms().printUserStat(ps, month);
 	}
 
 	/**
-	 * Print the distribution of number of photos according to the data provided in the vector.
-	 * The vector contains a numerical data, typically the number of groups a photo belongs to,
-	 * the number of views, comments or favs, etc.
+	 * Calculate the number of photos posted hour by hour over 24h.
 	 * 
-	 * @param ps the stream where to print the output
-	 * @param month, in case of processing data by month. Formatted as yyyy-mm.
-	 * When processing over a period of time, not a month, this may also be denote a category like "explored photos,
-	 * "any other photos". Cannot be null.
-	 * @param sliceSize size of the slice in the distribution of photos
-	 * @param nbSlices number of slices in the distribution of photos
-	 * @param dataToDistribute the data to sort in each slice. This is a vector, each entry corresponds to one photo
-	 */
-	private void computeDistrib(PrintStream ps, String month, int sliceSize, int nbSlices, Vector<Float> dataToDistribute) {
-
-		int nbPhotos = dataToDistribute.size();
-		logger.debug("sliceSize: " + sliceSize + ", nbSlices: " + nbSlices + ", nbPhotos: " + nbPhotos);
-
-		if (nbPhotos > 0) {
-			// Create the initial distribution array with values 0
-			Vector<Integer> distribution = new Vector<Integer>();
-			for (int i = 0; i < nbSlices; i++)
-				distribution.add(0);
-
-			for (Float data : dataToDistribute) {
-				// Calculate the slice in which this data should be counted
-				int sliceIndex = new Double(data / sliceSize).intValue();
-
-				// Limit the max number of slices: any data over nbSlices*sliceSize will be in the last catch-all slice
-				if (sliceIndex > (nbSlices - 1))
-					sliceIndex = nbSlices - 1;
-				distribution.set(sliceIndex, distribution.get(sliceIndex) + 1);
-			}
-
-			ps.print(month + "; ");
-			Iterator<Integer> iter = distribution.iterator();
-			while (iter.hasNext())
-				ps.printf("%2.4f; ", (float) (iter.next()) / nbPhotos);
-			ps.println();
+	 * @return a vector of 24 values: one value by hour of the day
+	 */
+	public Vector<Integer> getPostTimeDistrib() throws ServiceException {
+		ActivityHistograms histograms = getHistograms();
+		if (histograms.getNbInvalidDates() > 0) {
+			String errMsg = "Invalid date format: " + histograms.getNbInvalidDates() + " photos.";
+			logger.warn(errMsg);
+			throw new ServiceException(errMsg);
 		}
+		return histograms.getPostTimeDistrib();
 	}
 
 	/**
-	 * Calculate the number of photos posted hour by hour over 24h.
+	 * All the distributions are computed at once, in a single pass over the data loaded, the first time one of
+	 * them is needed.
 	 * 
-	 * @return a vector of 24 values: one value by hour of the day
+	 * @return the distributions of the data loaded
 	 */
-	public Vector<Integer> getPostTimeDistrib() throws ServiceException {
+	private ActivityHistograms getHistograms() {
+		if (histograms == null)
+			histograms = new ActivityHistograms(getRows());
+		return histograms;
+	}
+
+	/**
+	 * Rows of several sources, one after the other
+	 */
+	private static class ChainedRows implements ActivityRows
+	{
+		private Vector<ActivityRows> sources;
 
-		GregorianCalendar cal = new GregorianCalendar();
-		Vector<Integer> distribution = new Vector<Integer>();
+		private int size = 0;
 
-		// Init the distribution
-		for (int i = 0; i < 24; i++)
-			distribution.add(0);
+		/** Index of the current source */
+		private int current = 0;
 
-		try {
-			for (PhotoItemInfo item : statistics) {
-				Date date = sdf.parse(item.getDatePost());
-				cal.setTime(date);
-				int hour = cal.get(Calendar.HOUR_OF_DAY);
-				distribution.set(hour, distribution.get(hour) + 1);
+		ChainedRows(Vector<ActivityRows> sources) {
+			this.sources = sources;
+			for (ActivityRows source : sources) {
+				source.rewind();
+				size += source.size();
 			}
-			return distribution;
+		}
 
-		} catch (ParseException e) {
-			String errMsg = "Invalid date format. Exception: " + e.toString();
-			logger.warn(errMsg);
-			throw new ServiceException(errMsg);
+		public int size() {
+			return size;
+		}
+
+		public void rewind() {
+			for (ActivityRows source : sources)
+				source.rewind();
+			current = 0;
+		}
+
+		public boolean next() {
+			while (current < sources.size()) {
+				if (sources.get(current).next())
+					return true;
+				current++;
+			}
+			return false;
+		}
+
+		public int getViews() {
+			return sources.get(current).getViews();
+		}
+
+		public int getComments() {
+			return sources.get(current).getComments();
+		}
+
+		public int getFavs() {
+			return sources.get(current).getFavs();
+		}
+
+		public int getGroups() {
+			return sources.get(current).getGroups();
+		}
+
+		public int getTags() {
+			return sources.get(current).getTags();
+		}
+
+		public int getOwnersPhotos() {
+			return sources.get(current).getOwnersPhotos();
+		}
+
+		public int getOwnersContacts() {
+			return sources.get(current).getOwnersContacts();
+		}
+
+		public String getOwnerNsid() {
+			return sources.get(current).getOwnerNsid();
+		}
+
+		public boolean hasLocation() {
+			return sources.get(current).hasLocation();
+		}
+
+		public long getDatePost() {
+			return sources.get(current).getDatePost();
 		}
 	}
 }
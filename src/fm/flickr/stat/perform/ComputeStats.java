@@ -10,6 +10,7 @@ import org.apache.log4j.Logger;
 
 import fm.flickr.api.wrapper.util.ServiceException;
 import fm.util.Config;
+import fm.util.ReportOutput;
 
 /** 
  * @author fmichel
@@ -95,58 +96,76 @@ public class ComputeStats
 
 		/** File where to write the users average number of photos and contacts */
 		public PrintStream userAvg;
+
+		/**
+		 * Flush and close the files opened
+		 */
+		public void close() {
+			PrintStream[] all = { groupsSortedByHit, groupsDistrib, tagsSortedByHit, tagsDistrib, uploads, distribGroup, distribViews, distribComments, distribFavs, distribTags, distribOwnersPhotos, distribOwnersContacts, distribLocation, timeDistrib, userAvg };
+			for (PrintStream ps : all)
+				if (ps != null)
+					ps.close();
+		}
 	}
 
 	protected void initComputeActivity() throws FileNotFoundException {
 
 		if (config.getString("fm.flickr.stat.action.group").equals("on")) {
-			streams.groupsSortedByHit = new PrintStream(config.getString("fm.flickr.stat.group.dir") + "/result_sorted_listed.txt");
-			streams.groupsDistrib = new PrintStream(config.getString("fm.flickr.stat.group.dir") + "/result_avg.csv");
+			streams.groupsSortedByHit = ReportOutput.open(config.getString("fm.flickr.stat.group.dir") + "/result_sorted_listed.txt");
+			streams.groupsDistrib = ReportOutput.open(config.getString("fm.flickr.stat.group.dir") + "/result_avg.csv");
 			GroupStat.initComputeMonthly(streams.groupsDistrib);
 		}
 
 		if (config.getString("fm.flickr.stat.action.tag").equals("on")) {
-			streams.tagsSortedByHit = new PrintStream(config.getString("fm.flickr.stat.tag.dir") + "/result_sorted_listed.txt");
-			streams.tagsDistrib = new PrintStream(config.getString("fm.flickr.stat.tag.dir") + "/result_avg.csv");
+			streams.tagsSortedByHit = ReportOutput.open(config.getString("fm.flickr.stat.tag.dir") + "/result_sorted_listed.txt");
+			streams.tagsDistrib = ReportOutput.open(config.getString("fm.flickr.stat.tag.dir") + "/result_avg.csv");
 			TagStat.initComputeMonthly(streams.tagsDistrib);
 		}
 
 		if (config.getString("fm.flickr.stat.action.uploads").equals("on")) {
-			streams.uploads = new PrintStream(config.getString("fm.flickr.stat.uploads.dir") + "/distrib_results.csv");
+			streams.uploads = ReportOutput.open(config.getString("fm.flickr.stat.uploads.dir") + "/distrib_results.csv");
 			UploadsStat.initComputeDistribUploads(streams.uploads);
 		}
 
-		streams.distribGroup = new PrintStream(config.getString("fm.flickr.stat.activity.dir") + "/distrib_group.csv");
+		streams.distribGroup = ReportOutput.open(config.getString("fm.flickr.stat.activity.dir") + "/distrib_group.csv");
 		activityStat.initComputeDistrib(streams.distribGroup, config.getInt("fm.flickr.stat.activity.distrib.group.slice"), config.getInt("fm.flickr.stat.activity.distrib.group.nbslices"));
 
-		streams.distribViews = new PrintStream(config.getString("fm.flickr.stat.activity.dir") + "/distrib_view.csv");
+		streams.distribViews = ReportOutput.open(config.getString("fm.flickr.stat.activity.dir") + "/distrib_view.csv");
 		activityStat.initComputeDistrib(streams.distribViews, config.getInt("fm.flickr.stat.activity.distrib.view.slice"), config.getInt("fm.flickr.stat.activity.distrib.view.nbslices"));
 
-		streams.distribComments = new PrintStream(config.getString("fm.flickr.stat.activity.dir") + "/distrib_comment.csv");
+		streams.distribComments = ReportOutput.open(config.getString("fm.flickr.stat.activity.dir") + "/distrib_comment.csv");
 		activityStat.initComputeDistrib(streams.distribComments, config.getInt("fm.flickr.stat.activity.distrib.comment.slice"), config.getInt("fm.flickr.stat.activity.distrib.comment.nbslices"));
 
-		streams.distribFavs = new PrintStream(config.getString("fm.flickr.stat.activity.dir") + "/distrib_fav.csv");
+		streams.distribFavs = ReportOutput.open(config.getString("fm.flickr.stat.activity.dir") + "/distrib_fav.csv");
 		activityStat.initComputeDistrib(streams.distribFavs, config.getInt("fm.flickr.stat.activity.distrib.fav.slice"), config.getInt("fm.flickr.stat.activity.distrib.fav.nbslices"));
 
-		streams.distribTags = new PrintStream(config.getString("fm.flickr.stat.activity.dir") + "/distrib_tag.csv");
+		streams.distribTags = ReportOutput.open(config.getString("fm.flickr.stat.activity.dir") + "/distrib_tag.csv");
 		activityStat.initComputeDistrib(streams.distribTags, config.getInt("fm.flickr.stat.activity.distrib.tag.slice"), config.getInt("fm.flickr.stat.activity.distrib.tag.nbslices"));
 
-		streams.distribOwnersPhotos = new PrintStream(config.getString("fm.flickr.stat.activity.dir") + "/distrib_owners_photo.csv");
+		streams.distribOwnersPhotos = ReportOutput.open(config.getString("fm.flickr.stat.activity.dir") + "/distrib_owners_photo.csv");
 		activityStat.initComputeDistrib(streams.distribOwnersPhotos, config.getInt("fm.flickr.stat.activity.distrib.user_photo.slice"), config.getInt("fm.flickr.stat.activity.distrib.user.nbslices"));
 
-		streams.distribOwnersContacts = new PrintStream(config.getString("fm.flickr.stat.activity.dir") + "/distrib_owners_contact.csv");
+		streams.distribOwnersContacts = ReportOutput.open(config.getString("fm.flickr.stat.activity.dir") + "/distrib_owners_contact.csv");
 		activityStat.initComputeDistrib(streams.distribOwnersContacts, config.getInt("fm.flickr.stat.activity.distrib.user_contact.slice"), config.getInt("fm.flickr.stat.activity.distrib.user.nbslices"));
 
-		streams.distribLocation = new PrintStream(config.getString("fm.flickr.stat.activity.dir") + "/distrib_location.csv");
+		streams.distribLocation = ReportOutput.open(config.getString("fm.flickr.stat.activity.dir") + "/distrib_location.csv");
 		activityStat.initComputeDistribLocation(streams.distribLocation);
 
-		streams.timeDistrib = new PrintStream(config.getString("fm.flickr.stat.activity.dir") + "/distrib_time.csv");
+		streams.timeDistrib = ReportOutput.open(config.getString("fm.flickr.stat.activity.dir") + "/distrib_time.csv");
 		activityStat.initComputeDistribPostTime(streams.timeDistrib);
 
-		streams.userAvg = new PrintStream(config.getString("fm.flickr.stat.activity.dir") + "/user_average.csv");
+		streams.userAvg = ReportOutput.open(config.getString("fm.flickr.stat.activity.dir") + "/user_average.csv");
 		activityStat.initComputeUserStat(streams.userAvg);
 	}
 
+	/**
+	 * Flush and close the result files. They are buffered: this must be called once the statistics are computed,
+	 * including when an error occurred, so that the results written so far are not lost.
+	 */
+	protected void closeComputeActivity() {
+		streams.close();
+	}
+
 	/**
 	 * Runs the loading of data files on the given date by the dedicated statistics classes
 	 * 
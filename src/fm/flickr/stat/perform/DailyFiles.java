@@ -0,0 +1,186 @@
+package fm.flickr.stat.perform;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.commons.configuration.Configuration;
+
+import fm.flickr.api.wrapper.util.ServiceException;
+import fm.util.Config;
+import fm.util.Util;
+
+/**
+ * Location of the daily data files, named yyyy-mm-dd.ext, in a data directory. Two layouts are supported, and may be
+ * mixed in the same directory:
+ * <ul>
+ * <li>flat: all the files are directly in the data directory, e.g. stats/groups/2019-10-01.log</li>
+ * <li>partitioned by year and month: e.g. stats/groups/2019/10/2019-10-01.log</li>
+ * </ul>
+ * New files are written in the partitioned layout when property 'fm.flickr.stat.partitioned' is on.
+ * <p>
+ * The listing of each directory is kept in a sorted index and reused as long as the directory is not modified,
+ * so that looking for the files of a month does not list the whole directory again for each month and each type
+ * of statistics.
+ * </p>
+ *
+ * @author fmichel
+ */
+public class DailyFiles
+{
+	private static Configuration config = Config.getConfiguration();
+
+	private static final boolean PARTITIONED = config.getString("fm.flickr.stat.partitioned", "off").equals("on");
+
+	/** Sorted file names of the directories already listed, the key is the directory path */
+	private static HashMap<String, DirIndex> indexes = new HashMap<String, DirIndex>();
+
+	/**
+	 * Sorted file names of one directory, valid as long as the directory is not modified
+	 */
+	private static class DirIndex
+	{
+		long lastModified;
+
+		String[] names;
+	}
+
+	/**
+	 * Return the file where to write the data of one day, creating its directory if needed
+	 *
+	 * @param dirName data directory
+	 * @param date date formatted as yyyy-mm-dd
+	 * @param extension file extension, starting with a dot
+	 * @return the file in the partitioned layout if property 'fm.flickr.stat.partitioned' is on, in the flat layout otherwise
+	 */
+	public static File newFile(String dirName, String date, String extension) {
+		if (PARTITIONED)
+			return new File(Util.getDir(getPartition(new File(dirName), date).getPath()), date + extension);
+		return new File(Util.getDir(dirName), date + extension);
+	}
+
+	/**
+	 * Return the file of one day, in either layout
+	 *
+	 * @param dirName data directory
+	 * @param date date formatted as yyyy-mm-dd
+	 * @param extension file extension, starting with a dot
+	 * @return the file in the partitioned layout if it exists, in the flat layout otherwise (whether it exists or not)
+	 */
+	public static File findFile(String dirName, String date, String extension) {
+		File dir = new File(dirName);
+		File file = new File(getPartition(dir, date), date + extension);
+		if (file.exists())
+			return file;
+		return new File(dir, date + extension);
+	}
+
+	/**
+	 * List the files of a data directory whose name starts with the given prefix, e.g. all the files of a month,
+	 * in both layouts. When a file exists in both layouts, the partitioned one is returned.
+	 *
+	 * @param dir the data directory
+	 * @param prefix beginning of the file names, typically formatted as yyyy-mm
+	 * @return the files sorted by name, that is in chronological order
+	 * @throws ServiceException if the directory does not exist
+	 */
+	public static List<File> listFiles(File dir, String prefix) throws ServiceException {
+		String[] names = getIndex(dir);
+		if (names == null)
+			throw new ServiceException("Error: data directory " + dir.getPath() + " does not exists.");
+
+		// Files of the flat layout, then files of the partitions that may contain matching files
+		TreeMap<String, File> files = new TreeMap<String, File>();
+		for (String name : getNames(names, prefix))
+			if (!isPartition(name, 4))
+				files.put(name, new File(dir, name));
+
+		for (String year : getSubDirs(dir, names, prefix, 0)) {
+			File yearDir = new File(dir, year);
+			for (String month : getSubDirs(yearDir, getIndex(yearDir), prefix, 5)) {
+				File monthDir = new File(yearDir, month);
+				String[] monthNames = getIndex(monthDir);
+				if (monthNames != null)
+					for (String name : getNames(monthNames, prefix))
+						files.put(name, new File(monthDir, name));
+			}
+		}
+		return new ArrayList<File>(files.values());
+	}
+
+	/**
+	 * @return the partition of the given date: directory yyyy/mm in the data directory
+	 */
+	private static File getPartition(File dir, String date) {
+		return new File(new File(dir, date.substring(0, 4)), date.substring(5, 7));
+	}
+
+	/**
+	 * Return the sorted names of the files of a directory, listing it again only if it was modified since last time
+	 *
+	 * @return null if the directory does not exist
+	 */
+	private static synchronized String[] getIndex(File dir) {
+		if (dir == null)
+			return null;
+		long lastModified = dir.lastModified();
+		DirIndex index = indexes.get(dir.getPath());
+		if (index != null && index.lastModified == lastModified && lastModified != 0)
+			return index.names;
+
+		String[] names = dir.list();
+		if (names == null) {
+			indexes.remove(dir.getPath());
+			return null;
+		}
+		Arrays.sort(names);
+		index = new DirIndex();
+		index.lastModified = lastModified;
+		index.names = names;
+		indexes.put(dir.getPath(), index);
+		return names;
+	}
+
+	/**
+	 * @param names sorted file names
+	 * @return the names that start with the prefix, found by binary search
+	 */
+	private static List<String> getNames(String[] names, String prefix) {
+		List<String> result = new ArrayList<String>();
+		int i = Arrays.binarySearch(names, prefix);
+		if (i < 0)
+			i = -i - 1;
+		for (; i < names.length && names[i].startsWith(prefix); i++)
+			result.add(names[i]);
+		return result;
+	}
+
+	/**
+	 * @return true if the name may be a partition directory: a year (4 digits) or a month (2 digits)
+	 */
+	private static boolean isPartition(String name, int length) {
+		return name.length() == length && name.matches("\\d+");
+	}
+
+	/**
+	 * Return the partition sub-directories (4 digits for years, 2 digits for months) that may contain files
+	 * starting with the prefix
+	 *
+	 * @param names sorted file names of the directory, may be null
+	 * @param offset position of the sub-directory name in the file names: 0 for years, 5 for months
+	 */
+	private static List<String> getSubDirs(File dir, String[] names, String prefix, int offset) {
+		List<String> result = new ArrayList<String>();
+		if (names == null)
+			return result;
+		int length = (offset == 0) ? 4 : 2;
+		String subPrefix = prefix.length() > offset ? prefix.substring(offset, Math.min(prefix.length(), offset + length)) : "";
+		for (String name : getNames(names, subPrefix))
+			if (isPartition(name, length) && new File(dir, name).isDirectory())
+				result.add(name);
+		return result;
+	}
+}
@@ -3,7 +3,6 @@ package fm.flickr.stat.perform;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -13,9 +12,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.log4j.Logger;
@@ -23,13 +27,13 @@ import org.apache.log4j.Logger;
 import fm.flickr.api.wrapper.service.FlickrService;
 import fm.flickr.api.wrapper.service.param.GroupItem;
 import fm.flickr.api.wrapper.service.param.GroupItemsSet;
-import fm.flickr.api.wrapper.service.param.PhotoItem;
 import fm.flickr.api.wrapper.service.param.PhotoItemsSet;
 import fm.flickr.api.wrapper.util.ServiceException;
 import fm.flickr.stat.param.GroupItemStat;
 import fm.flickr.stat.param.GroupsPerPhoto;
+import fm.flickr.stat.param.PhotoRecord;
 import fm.util.Config;
-import fm.util.Util;
+import fm.util.ReportOutput;
 
 /**
  * Collect the number of groups an explored photo belongs to.
@@ -49,14 +53,26 @@ public class GroupStat
 
 	private static Configuration config = Config.getConfiguration();
 
+	/** Number of groups kept in the daily summaries used by ComputeStatsTimeframe, 0 to load the complete daily files */
+	private static final int SUMMARY_TOPK = config.getInt("fm.flickr.stat.summary.topk", 0);
+
 	private static FlickrService service = new FlickrService();
 
-	/** Groups collected or loaded. The key is the group id */
-	private static HashMap<String, GroupItemStat> statistics = new HashMap<String, GroupItemStat>();
+	/** Ids and names of the groups loaded into statistics, each group is denoted by its index in the dictionary */
+	private static IdDictionary dictionary = new IdDictionary();
+
+	/** Number of occurences of the groups loaded. The key is the index of the group in the dictionary */
+	private static IntCounts statistics = new IntCounts();
 
 	/** Stats of number of groups a photo belongs to */
 	private static List<GroupsPerPhoto> statisticsGpP = new ArrayList<GroupsPerPhoto>();
 
+	/**
+	 * Approximate counts of the most frequent groups over a timeframe, with 'fm.flickr.stat.group.counters' counters,
+	 * used instead of map statistics when loading files by day. Null if all groups are counted exactly.
+	 */
+	private static SpaceSaving topGroups = (config.getInt("fm.flickr.stat.group.counters", 0) > 0) ? new SpaceSaving(config.getInt("fm.flickr.stat.group.counters")) : null;
+
 	/**
 	 * Retrieve the list of groups that photos from Interestingness belong to, and count the number
 	 * of times the same group is entcountered.
@@ -69,6 +85,21 @@ public class GroupStat
 	 * @throws IOException in case the file can't be saved
 	 */
 	public static void collecAdditionalData(String date, PhotoItemsSet photos) throws IOException {
+		collecAdditionalData(date, PhotoRecordFetcher.fetch(photos, true, false, false));
+	}
+
+	/**
+	 * Count the number of times the same group is entcountered in the groups of photos collected beforehand
+	 * by the {@link PhotoRecordFetcher}.
+	 * 
+	 * A maximum of 'fm.flickr.stat.group.maxgroups' groups will be stored. 
+	 * The results are saved into a file.
+	 * 
+	 * @param date date of photos from Interestingness, given in format "YYY-MM-DD"
+	 * @param records data collected about each photo
+	 * @throws IOException in case the file can't be saved
+	 */
+	public static void collecAdditionalData(String date, List<PhotoRecord> records) throws IOException {
 
 		HashMap<String, GroupItemStat> stats = new HashMap<String, GroupItemStat>();
 
@@ -78,11 +109,11 @@ public class GroupStat
 		Vector<Integer> listNumGroups = new Vector<Integer>(); // list of number of groups that photos belong to
 
 		// Loop on all photos retrieved at once from Interestingness
-		for (PhotoItem photo : photos.getPhotosList()) {
+		for (PhotoRecord record : records) {
 			nbPhotosProcessed++;
 
 			// Get all groups that the photo belongs to
-			GroupItemsSet groupSet = service.getPhotoPools(photo.getPhotoId());
+			GroupItemsSet groupSet = record.getGroupsSet();
 			if (groupSet != null) {
 				if (groupSet.size() > maxGroups)
 					maxGroups = groupSet.size();
@@ -113,14 +144,6 @@ public class GroupStat
 				if (nbPhotosProcessed % 10 == 0)
 					logger.info("Processed " + nbPhotosProcessed + " photos, registered " + stats.size() + " groups.");
 			}
-
-			// Sleep between each photo... just not to be overloading
-			try {
-				Thread.sleep(config.getInt("fm.flickr.stat.sleepms"));
-			} catch (InterruptedException e) {
-				logger.warn("Unepected interruption: " + e.toString());
-				e.printStackTrace();
-			}
 		}
 
 		logger.info("### Processed " + stats.size() + " groups from " + nbPhotosProcessed + " photos");
@@ -155,7 +178,7 @@ public class GroupStat
 	 */
 	private static void saveGroupsFromInterestingPhotos(String date, HashMap<String, GroupItemStat> stats, int nbPhotosProcessed, int sumGroups, int maxGroups, float stdDeviation) throws IOException {
 
-		File file = new File(Util.getDir(config.getString("fm.flickr.stat.group.dir")), date + ".log");
+		File file = DailyFiles.newFile(config.getString("fm.flickr.stat.group.dir"), date, ".log");
 		FileOutputStream fos = new FileOutputStream(file);
 		PrintWriter writer = new PrintWriter(fos);
 
@@ -190,9 +213,19 @@ public class GroupStat
 	 */
 	public static void loadFileByDay(String date) throws ServiceException {
 
-		String fileName = config.getString("fm.flickr.stat.group.dir") + date + ".log";
-		loadFile(new File(fileName));
-		logger.info("### " + statistics.size() + " total groups loaded.");
+		File file = DailyFiles.findFile(config.getString("fm.flickr.stat.group.dir"), date, ".log");
+		// Groups counted by topGroups are not kept in the dictionary: the day has its own
+		IdDictionary dayDictionary = (topGroups != null) ? new IdDictionary() : dictionary;
+		DailyGroups day = (Snapshots.isEnabled() && SUMMARY_TOPK > 0) ? getDailySummary(file, date, dayDictionary) : loadFile(file, dayDictionary);
+		if (topGroups != null) {
+			statisticsGpP.addAll(day.groupsPerPhoto);
+			for (int group : day.groups.getKeys())
+				topGroups.add(dayDictionary.getKey(group), dayDictionary.getName(group), day.groups.get(group));
+			logger.info("### " + topGroups.size() + " total groups counted.");
+		} else {
+			merge(day);
+			logger.info("### " + statistics.size() + " total groups loaded.");
+		}
 	}
 
 	/**
@@ -204,6 +237,7 @@ public class GroupStat
 	public static void loadFilesByMonth(String yearMonth) throws ServiceException {
 		// Empty the current data if any
 		statistics.clear();
+		dictionary.clear();
 		statisticsGpP.clear();
 
 		File dir = new File(config.getString("fm.flickr.stat.group.dir"));
@@ -213,24 +247,42 @@ public class GroupStat
 			throw new ServiceException(errMsg);
 		}
 
-		for (File file : dir.listFiles())
-			if (file.getName().startsWith(yearMonth))
-				loadFile(file);
+		// Load the month from its snapshot if the daily files have not changed since it was saved
+		List<File> files = DailyFiles.listFiles(dir, yearMonth);
+		File snapshot = Snapshots.getFile(dir, yearMonth, ".log");
+		String signature = Snapshots.getSignature(files, "");
+		if (Snapshots.isUpToDate(snapshot, signature)) {
+			merge(loadFile(snapshot, dictionary));
+			logger.info("### " + statistics.size() + " total groups loaded for period " + yearMonth + " from snapshot");
+			return;
+		}
+
+		// Parse the files concurrently, then merge them in chronological order
+		List<DailyGroups> days = ParallelFileLoader.parse(files, new ParallelFileLoader.FileParser<DailyGroups>() {
+			public DailyGroups parse(File file) throws ServiceException {
+				return loadFile(file, dictionary);
+			}
+		});
+		for (DailyGroups day : days)
+			merge(day);
+		if (Snapshots.isEnabled() && !files.isEmpty())
+			saveSnapshot(snapshot, signature, statisticsGpP, statistics, dictionary);
 
 		logger.info("### " + statistics.size() + " total groups loaded for period " + yearMonth);
 	}
 
 	/**
-	 * Parse the content of the given data file and store its content into static maps
-	 * statistics and statisticsGpP
+	 * Parse the content of the given data file
 	 * 
 	 * @param file
+	 * @param dictionary dictionary where to add the groups of the file
 	 */
-	private static void loadFile(File file) throws ServiceException {
+	private static DailyGroups loadFile(File file, IdDictionary dictionary) throws ServiceException {
+		DailyGroups day = new DailyGroups();
 		try {
 			if (!file.exists()) {
 				logger.warn("No file: " + file.getAbsolutePath());
-				return;
+				return day;
 			}
 
 			FileInputStream fis = new FileInputStream(file);
@@ -260,7 +312,7 @@ public class GroupStat
 						if (str.startsWith(strSeeked))
 							gpp.setStdDevGroupsPerPhoto(Float.valueOf(str.substring(strSeeked.length())));
 
-						statisticsGpP.add(gpp);
+						day.groupsPerPhoto.add(gpp);
 					}
 
 				} else {
@@ -268,25 +320,14 @@ public class GroupStat
 					if (tokens.length != 3)
 						logger.warn("Wrong format on line: " + str);
 					else {
-						String groupId = tokens[0];
-
-						GroupItemStat groupStat = statistics.get(groupId);
-						if (groupStat != null) {
-							// Either increment the number of occurences if the group already exists
-							groupStat.incNbOccurences(Integer.valueOf(tokens[2]));
-							logger.trace("Updating group " + groupId + ": " + groupStat.getNbOccurences());
-
-						} else {
-							// Or create a new group element
-							GroupItemStat group = new GroupItemStat(tokens[0], tokens[1], Integer.valueOf(tokens[2]));
-							logger.trace("Adding group " + groupId);
-							statistics.put(groupId, group);
-						}
+						// Either add a new group or increment the number of occurences if the group already exists
+						day.groups.add(dictionary.getIndex(tokens[0], tokens[1]), Integer.valueOf(tokens[2]));
 					}
 				}
 				str = buffer.readLine();
 			}
 			fis.close();
+			return day;
 
 		} catch (IOException e) {
 			String errMsg = "Error when reading file " + file.getName() + ". Exception: " + e.toString();
@@ -295,6 +336,95 @@ public class GroupStat
 		}
 	}
 
+	/**
+	 * Merge the data of one day into the static maps statistics and statisticsGpP
+	 * 
+	 * @param day data loaded from the file of one day
+	 */
+	private static void merge(DailyGroups day) {
+		statisticsGpP.addAll(day.groupsPerPhoto);
+		statistics.addAll(day.groups);
+	}
+
+	/**
+	 * Save the summary of the given date, if daily summaries are used, so that it is ready for ComputeStatsTimeframe
+	 * 
+	 * @param date date formatted as yyyy-mm-dd
+	 */
+	public static void saveDailySummary(String date) {
+		if (Snapshots.isEnabled() && SUMMARY_TOPK > 0) {
+			try {
+				getDailySummary(DailyFiles.findFile(config.getString("fm.flickr.stat.group.dir"), date, ".log"), date, new IdDictionary());
+			} catch (ServiceException e) {
+				logger.warn("Cannot save the summary of " + date + ". Exception: " + e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Return the summary of one day: the figures of the day and its 'fm.flickr.stat.summary.topk' most frequent groups.
+	 * The summary is read from its snapshot if it is up to date, otherwise it is computed from the daily file and saved.
+	 * 
+	 * @param file daily file
+	 * @param date date of the file, formatted as yyyy-mm-dd
+	 * @param dictionary dictionary where to add the groups of the summary
+	 */
+	private static DailyGroups getDailySummary(File file, String date, IdDictionary dictionary) throws ServiceException {
+		File summary = Snapshots.getFile(new File(config.getString("fm.flickr.stat.group.dir")), date, ".log");
+		String signature = Snapshots.getSignature(Collections.singletonList(file), "topk=" + SUMMARY_TOPK);
+		if (Snapshots.isUpToDate(summary, signature))
+			return loadFile(summary, dictionary);
+
+		DailyGroups day = loadFile(file, dictionary);
+		day.groups.keepTop(SUMMARY_TOPK);
+		if (file.exists())
+			saveSnapshot(summary, signature, day.groupsPerPhoto, day.groups, dictionary);
+		return day;
+	}
+
+	/**
+	 * Save groups into a snapshot, in the format of the daily files: the figures of each day followed by the
+	 * occurrences of each group over the period
+	 * 
+	 * @param snapshot the snapshot file
+	 * @param signature signature of the daily files of the period
+	 * @param groupsPerPhoto figures of each day
+	 * @param groups occurrences of the groups of the period
+	 * @param dictionary dictionary of the groups
+	 */
+	private static void saveSnapshot(File snapshot, String signature, List<GroupsPerPhoto> groupsPerPhoto, IntCounts groups, IdDictionary dictionary) {
+		try {
+			File tmp = Snapshots.createTempFile(snapshot);
+			PrintWriter writer = new PrintWriter(new FileOutputStream(tmp));
+			writer.println(Snapshots.HEADER + signature);
+			for (GroupsPerPhoto gpp : groupsPerPhoto) {
+				writer.println("# Average number of groups a photo belongs to: " + gpp.getAvgGroupsPerPhoto());
+				writer.println("# Maximum number of groups a photo belongs to: " + gpp.getMaxGroupsPerPhoto());
+				writer.println("# Standard deviation of the number of groups a photo belongs to: " + gpp.getStdDevGroupsPerPhoto());
+			}
+			for (int group : groups.getKeys())
+				writer.println(dictionary.getKey(group) + GroupItemStat.FIELD_SEPARATOR + dictionary.getName(group) + GroupItemStat.FIELD_SEPARATOR + groups.get(group));
+			writer.close();
+			if (writer.checkError())
+				throw new IOException("error when writing file " + tmp.getPath());
+			Snapshots.commit(tmp, snapshot);
+		} catch (IOException e) {
+			logger.warn("Cannot save snapshot " + snapshot.getPath() + ". Exception: " + e.toString());
+		}
+	}
+
+	/**
+	 * Data loaded from the file of one day
+	 */
+	private static class DailyGroups
+	{
+		/** Number of occurences of the groups of the day. The key is the index of the group in the dictionary it was loaded with */
+		IntCounts groups = new IntCounts();
+
+		/** Stats of number of groups per photo */
+		List<GroupsPerPhoto> groupsPerPhoto = new ArrayList<GroupsPerPhoto>();
+	}
+
 	/**
 	 * Print the header line following the csv format
 	 * @param ps
@@ -313,8 +443,19 @@ public class GroupStat
 	 */
 	public static void displayGroupsByPopularity(PrintStream ps) {
 		logger.info("Computing statistincs of groups");
-		Collection<GroupItemStat> grpset = statistics.values();
-		ArrayList<GroupItemStat> grpList = new ArrayList<GroupItemStat>(grpset);
+		ArrayList<GroupItemStat> grpList;
+		if (topGroups != null) {
+			grpList = new ArrayList<GroupItemStat>();
+			for (SpaceSaving.Counter counter : topGroups.getCounters())
+				grpList.add(new GroupItemStat(counter.getKey(), counter.getLabel(), counter.getCount()));
+			logger.info("Number of occurences of groups are overestimated by at most " + topGroups.getMaxError() + " out of " + topGroups.getTotal());
+		} else {
+			// Only the groups that may be displayed are created
+			grpList = new ArrayList<GroupItemStat>();
+			int[] groups = statistics.getKeysByCount();
+			for (int i = 0; i < groups.length && i < config.getInt("fm.flickr.stat.group.maxresults"); i++)
+				grpList.add(new GroupItemStat(dictionary.getKey(groups[i]), dictionary.getName(groups[i]), statistics.get(groups[i])));
+		}
 
 		// Sort the groups by number of occurrences (thx to method GroupItemStat.compareTo() 
 		Collections.sort(grpList);
@@ -330,9 +471,8 @@ public class GroupStat
 		if (config.getString("fm.flickr.stat.group.proba").equalsIgnoreCase("on")) {
 			String fn = config.getString("fm.flickr.stat.group.dir") + "/group_explore_proba_" + config.getString("fm.flickr.stat.startdate") + "_" + config.getString("fm.flickr.stat.enddate") + ".csv";
 			try {
-				PrintStream psGrpProba = new PrintStream(fn);
-				postProcessStat(psGrpProba, grpList);
-			} catch (FileNotFoundException e) {
+				postProcessStat(new File(fn), grpList);
+			} catch (IOException e) {
 				logger.error("Can't write file " + fn);
 			}
 		}
@@ -358,8 +498,8 @@ public class GroupStat
 		}
 
 		ps.print(month + "; ");
-		ps.printf("%2.4f;", sumAvg / statisticsGpP.size());
-		ps.printf("%2.4f;", sumStdDev / statisticsGpP.size());
+		ps.print(ReportOutput.format4(sumAvg / statisticsGpP.size()) + ";");
+		ps.print(ReportOutput.format4(sumStdDev / statisticsGpP.size()) + ";");
 		ps.println(sumMax / statisticsGpP.size());
 	}
 
@@ -369,40 +509,148 @@ public class GroupStat
 	 * <code>proba = number of explored photos during a time slot / total number of photos posted in that 
 	 * group during the same time slot * 100</code>
 	 * That processing require additional queries to Flickr.
-	 * @param ps
-	 * @param grpList
+	 * Groups are processed concurrently by 'fm.flickr.stat.group.proba.nbthreads' threads, while the overall request
+	 * rate remains capped by fm.flickr.api.wrapper.max_requests_per_sec. The line of each group is written as soon as
+	 * it is computed, thus not in the order of the groups. The groups completed are listed in a file &lt;file&gt;.done
+	 * until all of them are processed, so that an interrupted run resumes with the groups left.
+	 * @param file csv file where to write the results
+	 * @param grpList groups sorted by decreasing number of explored photos
 	 */
-	private static void postProcessStat(PrintStream ps, ArrayList<GroupItemStat> grpList) {
+	private static void postProcessStat(File file, ArrayList<GroupItemStat> grpList) throws IOException {
+
+		// Groups already completed by a previous run that was interrupted
+		File doneFile = new File(file.getPath() + ".done");
+		boolean resume = file.exists() && doneFile.exists();
+		HashSet<String> completed = new HashSet<String>();
+		if (resume) {
+			completed.addAll(readGroupIds(doneFile));
+			completed.addAll(readGroupIds(file));
+		}
 
-		ps.println("group ID; group name; total nb photos; nb members; nb photos posted; nb explored photos; explore proba; is moderated");
+		final PrintStream ps = new PrintStream(new FileOutputStream(file, resume));
+		final PrintStream psDone = new PrintStream(new FileOutputStream(doneFile, resume));
+		if (!resume)
+			ps.println("group ID; group name; total nb photos; nb members; nb photos posted; nb explored photos; explore proba; is moderated");
 
+		List<GroupItemStat> todo = new ArrayList<GroupItemStat>();
 		for (int i = 0; i < grpList.size() && i < config.getInt("fm.flickr.stat.group.maxresults"); i++) {
-			GroupItemStat entry = grpList.get(i);
-
-			// Filter out some groups
-			if (entry.getGroupName().matches(config.getString("fm.flickr.stat.group.proba.skip.regex")))
-				logger.info("Skipping group " + entry.getGroupName());
-			else {
-				// Get the general information about the group (number of members, of photos, is moderated)
-				GroupItem grpItem = service.getGroupInfo(entry.getGroupId());
-				if (grpItem != null) {
-					if (config.getBoolean("fm.flickr.stat.group.proba.skip.moderated") && grpItem.isModerated())
-						logger.info("Skipping moderated group " + entry.toStringShort());
-					else {
-						logger.info("Processing group " + entry.toStringShort());
-
-						Long nbPosted = service.getNbOfPhotosAddedToGroup(grpItem.getGroupId(), config.getString("fm.flickr.stat.startdate"), config.getString("fm.flickr.stat.enddate"));
-						if (nbPosted != null) {
-							float proba = (float) entry.getNbOccurences() * 100 / nbPosted;
-							ps.print(grpItem.getGroupId() + "; " + grpItem.getGroupName().replace(";", ",") + "; " + grpItem.getNbPhotos() + "; " + grpItem.getNbMembers() + "; ");
-							ps.print(nbPosted + "; " + entry.getNbOccurences() + "; ");
-							ps.printf("%2.4f; ", proba);
-							ps.println(grpItem.isModerated() ? "moderated" : "");
-						} else
-							logger.info("Skipping group " + entry.toStringShort());
+			if (!completed.contains(grpList.get(i).getGroupId()))
+				todo.add(grpList.get(i));
+		}
+		if (resume)
+			logger.info("Resuming computation of groups explore probability: " + todo.size() + " groups left");
+
+		final int nbGroups = todo.size();
+		final AtomicInteger nbProcessed = new AtomicInteger(0);
+		final AtomicInteger nbFailed = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(Math.max(1, config.getInt("fm.flickr.stat.group.proba.nbthreads", 1)), Math.max(1, nbGroups)));
+		for (final GroupItemStat entry : todo) {
+			executor.submit(new Runnable() {
+				public void run() {
+					try {
+						String line = processGroup(entry);
+						// Write the result as soon as it is available, then record the group as completed
+						synchronized (ps) {
+							if (line != null) {
+								ps.println(line);
+								ps.flush();
+							}
+							psDone.println(entry.getGroupId());
+							psDone.flush();
+						}
+					} catch (ServiceException e) {
+						// The group is not recorded as completed, so that it is processed again by the next run
+						nbFailed.incrementAndGet();
+						logger.warn("Could not process group " + entry.toStringShort() + ": " + e.getMessage());
+					} catch (RuntimeException e) {
+						nbFailed.incrementAndGet();
+						logger.error("Error while processing group " + entry.toStringShort(), e);
 					}
+
+					// Trace activity every 10 groups
+					int nb = nbProcessed.incrementAndGet();
+					if (nb % 10 == 0)
+						logger.info("Processed " + nb + "/" + nbGroups + " groups.");
+					else
+						logger.debug("Processed " + nb + "/" + nbGroups + " groups.");
 				}
-			}
+			});
+		}
+		executor.shutdown();
+
+		boolean interrupted = false;
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			logger.warn("Unepected interruption: " + e.toString());
+			Thread.currentThread().interrupt();
+			executor.shutdownNow();
+			interrupted = true;
+		}
+		ps.close();
+		psDone.close();
+
+		// Keep track of the groups completed only if some are left for the next run
+		if (!interrupted && nbFailed.get() == 0)
+			doneFile.delete();
+		else
+			logger.warn((nbGroups - nbProcessed.get() + nbFailed.get()) + " groups not processed, run again to complete file " + file.getName());
+	}
+
+	/**
+	 * Compute the ratio of explored photos / uploaded photos of one group
+	 * 
+	 * @param entry the group with its number of explored photos
+	 * @return the csv line of the group, or null if the group is skipped
+	 * @throws ServiceException if the data about the group could not be retrieved
+	 */
+	private static String processGroup(GroupItemStat entry) throws ServiceException {
+		// Filter out some groups
+		if (entry.getGroupName().matches(config.getString("fm.flickr.stat.group.proba.skip.regex"))) {
+			logger.info("Skipping group " + entry.getGroupName());
+			return null;
+		}
+
+		// Get the general information about the group (number of members, of photos, is moderated)
+		GroupItem grpItem = service.getGroupInfo(entry.getGroupId());
+		if (grpItem == null)
+			throw new ServiceException("cannot get the information about the group");
+
+		if (config.getBoolean("fm.flickr.stat.group.proba.skip.moderated") && grpItem.isModerated()) {
+			logger.info("Skipping moderated group " + entry.toStringShort());
+			return null;
+		}
+
+		logger.info("Processing group " + entry.toStringShort());
+		Long nbPosted = service.getNbOfPhotosAddedToGroup(grpItem.getGroupId(), config.getString("fm.flickr.stat.startdate"), config.getString("fm.flickr.stat.enddate"));
+		if (nbPosted == null)
+			throw new ServiceException("cannot get the number of photos added to the group");
+
+		float proba = (float) entry.getNbOccurences() * 100 / nbPosted;
+		StringBuilder line = new StringBuilder();
+		line.append(grpItem.getGroupId() + "; " + grpItem.getGroupName().replace(";", ",") + "; " + grpItem.getNbPhotos() + "; " + grpItem.getNbMembers() + "; ");
+		line.append(nbPosted + "; " + entry.getNbOccurences() + "; ");
+		line.append(ReportOutput.format4(proba) + "; ");
+		line.append(grpItem.isModerated() ? "moderated" : "");
+		return line.toString();
+	}
+
+	/**
+	 * Read the group ids from the first field of each line of a file
+	 * 
+	 * @param file csv file of explore probabilities, or list of groups completed
+	 * @return the group ids found
+	 */
+	private static List<String> readGroupIds(File file) throws IOException {
+		List<String> ids = new ArrayList<String>();
+		BufferedReader buffer = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+		String str = buffer.readLine();
+		while (str != null) {
+			int sep = str.indexOf(';');
+			ids.add((sep < 0) ? str.trim() : str.substring(0, sep).trim());
+			str = buffer.readLine();
 		}
+		buffer.close();
+		return ids;
 	}
 }
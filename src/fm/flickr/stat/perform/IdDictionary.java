@@ -0,0 +1,71 @@
+package fm.flickr.stat.perform;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of item identifiers, such as group or tag ids: each identifier is given a dense int, and the identifier
+ * and the name of the item are stored once whatever the number of times the item is loaded.
+ * Identifiers can be looked up concurrently.
+ *
+ * @author fmichel
+ */
+public class IdDictionary
+{
+	/** Index of the identifiers */
+	private ConcurrentHashMap<String, Integer> index = new ConcurrentHashMap<String, Integer>();
+
+	/** Identifiers by index */
+	private ArrayList<String> keys = new ArrayList<String>();
+
+	/** Names by index */
+	private ArrayList<String> names = new ArrayList<String>();
+
+	/**
+	 * Return the int of an identifier, adding it to the dictionary if needed
+	 *
+	 * @param key identifier of the item
+	 * @param name name of the item, only kept the first time the identifier is added
+	 * @return index of the identifier, from 0 to size() - 1
+	 */
+	public int getIndex(String key, String name) {
+		Integer idx = index.get(key);
+		if (idx != null)
+			return idx;
+
+		synchronized (this) {
+			idx = index.get(key);
+			if (idx == null) {
+				idx = keys.size();
+				keys.add(key);
+				names.add(name);
+				index.put(key, idx);
+			}
+			return idx;
+		}
+	}
+
+	public synchronized String getKey(int idx) {
+		return keys.get(idx);
+	}
+
+	public synchronized String getName(int idx) {
+		return names.get(idx);
+	}
+
+	/**
+	 * Remove all the identifiers
+	 */
+	public synchronized void clear() {
+		index.clear();
+		keys.clear();
+		names.clear();
+	}
+
+	/**
+	 * @return number of identifiers
+	 */
+	public synchronized int size() {
+		return keys.size();
+	}
+}
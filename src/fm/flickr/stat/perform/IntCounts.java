@@ -0,0 +1,149 @@
+package fm.flickr.stat.perform;
+
+import java.util.Arrays;
+
+/**
+ * Number of occurrences of items denoted by ints (see {@link IdDictionary}), in a hash table with open addressing
+ * on primitive arrays: no object is created per item.
+ *
+ * @author fmichel
+ */
+public class IntCounts
+{
+	private static final int EMPTY = -1;
+
+	/** Items, EMPTY for free slots */
+	private int[] keys;
+
+	private int[] counts;
+
+	private int size = 0;
+
+	public IntCounts() {
+		keys = new int[16];
+		Arrays.fill(keys, EMPTY);
+		counts = new int[16];
+	}
+
+	/**
+	 * Add occurrences of an item
+	 *
+	 * @param key item, a positive int
+	 * @param count number of occurrences to add
+	 */
+	public void add(int key, int count) {
+		int slot = getSlot(key);
+		if (keys[slot] == EMPTY) {
+			keys[slot] = key;
+			size++;
+			if (size * 2 > keys.length) {
+				rehash(keys.length * 2);
+				slot = getSlot(key);
+			}
+		}
+		counts[slot] += count;
+	}
+
+	/**
+	 * Add all the occurrences counted by another instance
+	 */
+	public void addAll(IntCounts other) {
+		for (int i = 0; i < other.keys.length; i++)
+			if (other.keys[i] != EMPTY)
+				add(other.keys[i], other.counts[i]);
+	}
+
+	/**
+	 * @return the number of occurrences of an item, 0 if it was not counted
+	 */
+	public int get(int key) {
+		int slot = getSlot(key);
+		return (keys[slot] == EMPTY) ? 0 : counts[slot];
+	}
+
+	/**
+	 * @return number of items counted
+	 */
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		Arrays.fill(counts, 0);
+		size = 0;
+	}
+
+	/**
+	 * @return the items counted
+	 */
+	public int[] getKeys() {
+		int[] result = new int[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++)
+			if (keys[i] != EMPTY)
+				result[n++] = keys[i];
+		return result;
+	}
+
+	/**
+	 * @return the items counted, sorted by decreasing number of occurrences
+	 */
+	public int[] getKeysByCount() {
+		// Sort (count, key) pairs packed into longs: counts are positive
+		long[] pairs = new long[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++)
+			if (keys[i] != EMPTY)
+				pairs[n++] = ((long) counts[i] << 32) | keys[i];
+		Arrays.sort(pairs);
+
+		int[] result = new int[size];
+		for (int i = 0; i < size; i++)
+			result[i] = (int) pairs[size - 1 - i];
+		return result;
+	}
+
+	/**
+	 * Keep only the most frequent items
+	 *
+	 * @param nb number of items to keep
+	 */
+	public void keepTop(int nb) {
+		if (size <= nb)
+			return;
+		int[] top = Arrays.copyOf(getKeysByCount(), nb);
+		int[] topCounts = new int[nb];
+		for (int i = 0; i < nb; i++)
+			topCounts[i] = get(top[i]);
+		clear();
+		for (int i = 0; i < nb; i++)
+			add(top[i], topCounts[i]);
+	}
+
+	/**
+	 * @return slot of the key, or free slot where to add it
+	 */
+	private int getSlot(int key) {
+		int mask = keys.length - 1;
+		int hash = key * 0x9E3779B9;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+		keys = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		counts = new int[capacity];
+		for (int i = 0; i < oldKeys.length; i++)
+			if (oldKeys[i] != EMPTY) {
+				int slot = getSlot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+	}
+}
@@ -0,0 +1,98 @@
+package fm.flickr.stat.perform;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.commons.configuration.Configuration;
+
+import fm.flickr.api.wrapper.util.ServiceException;
+import fm.util.Config;
+
+/**
+ * Fork/join loader of daily data files: the files are parsed concurrently, each one into its own partial result,
+ * and the partial results are returned in the order of the files so that the caller can merge them
+ * deterministically. The number of threads is set by property 'fm.flickr.stat.load.nbthreads', by default the
+ * number of processors.
+ *
+ * @author fmichel
+ */
+public class ParallelFileLoader
+{
+	private static Configuration config = Config.getConfiguration();
+
+	private static final ForkJoinPool pool = new ForkJoinPool(Math.max(1, config.getInt("fm.flickr.stat.load.nbthreads", Runtime.getRuntime().availableProcessors())));
+
+	/**
+	 * Parser of one data file
+	 */
+	public interface FileParser<T>
+	{
+		/**
+		 * @param file the file to parse
+		 * @return the data of the file. This method may be called concurrently for different files.
+		 */
+		T parse(File file) throws ServiceException;
+	}
+
+	/**
+	 * Parse the files concurrently
+	 *
+	 * @param files the files to parse
+	 * @param parser how to parse one file
+	 * @return the results of the parser, in the order of the files
+	 * @throws ServiceException the first error raised by the parser, if any
+	 */
+	public static <T> List<T> parse(List<File> files, FileParser<T> parser) throws ServiceException {
+		if (files.isEmpty())
+			return new ArrayList<T>();
+		try {
+			return pool.invoke(new ParseTask<T>(files, parser));
+		} catch (RuntimeException e) {
+			// The exception may be rethrown by the pool as a new instance with the original one as its cause
+			for (Throwable cause = e; cause != null; cause = cause.getCause())
+				if (cause instanceof ServiceException)
+					throw (ServiceException) cause;
+			throw e;
+		}
+	}
+
+	/**
+	 * Parse a list of files: split it in two halves processed concurrently, until there is one file left
+	 */
+	private static class ParseTask<T> extends RecursiveTask<List<T>>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private List<File> files;
+
+		private FileParser<T> parser;
+
+		ParseTask(List<File> files, FileParser<T> parser) {
+			this.files = files;
+			this.parser = parser;
+		}
+
+		protected List<T> compute() {
+			if (files.size() == 1) {
+				List<T> result = new ArrayList<T>();
+				try {
+					result.add(parser.parse(files.get(0)));
+				} catch (ServiceException e) {
+					throw new RuntimeException(e);
+				}
+				return result;
+			}
+
+			int middle = files.size() / 2;
+			ParseTask<T> first = new ParseTask<T>(files.subList(0, middle), parser);
+			first.fork();
+			List<T> second = new ParseTask<T>(files.subList(middle, files.size()), parser).compute();
+			List<T> result = first.join();
+			result.addAll(second);
+			return result;
+		}
+	}
+}
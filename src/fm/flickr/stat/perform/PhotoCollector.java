@@ -0,0 +1,116 @@
+package fm.flickr.stat.perform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.log4j.Logger;
+
+import fm.flickr.api.wrapper.service.param.PhotoItem;
+import fm.util.Config;
+
+/**
+ * Bounded-concurrency engine that runs a collection task on each photo of a list, using at most
+ * 'fm.flickr.stat.collect.nbthreads' worker threads. The overall request rate is capped independently
+ * by the Flickr API wrapper (see property fm.flickr.api.wrapper.max_requests_per_sec).
+ *
+ * Results are returned in the order of the input list, that is the Interestingness rank order.
+ *
+ * @author fmichel
+ */
+public class PhotoCollector<T>
+{
+	private static Logger logger = Logger.getLogger(PhotoCollector.class.getName());
+
+	private static Configuration config = Config.getConfiguration();
+
+	/**
+	 * Task run on each photo by the worker threads
+	 */
+	public interface PhotoTask<T>
+	{
+		/**
+		 * @param photo the photo to process
+		 * @return the data collected about that photo, or null if it could not be collected
+		 */
+		T process(PhotoItem photo);
+	}
+
+	/** Max number of photos processed at the same time */
+	private int nbThreads;
+
+	public PhotoCollector() {
+		this(config.getInt("fm.flickr.stat.collect.nbthreads", 1));
+	}
+
+	public PhotoCollector(int nbThreads) {
+		this.nbThreads = Math.max(1, nbThreads);
+	}
+
+	/**
+	 * Run the task on each photo and wait for all of them to complete
+	 *
+	 * @param photos photos to process
+	 * @param task what to do with each photo
+	 * @return list of results in the same order as the photos list. An entry is null if the task failed or
+	 * returned null for that photo.
+	 */
+	public List<T> collect(List<PhotoItem> photos, final PhotoTask<T> task) {
+
+		final AtomicInteger nbProcessed = new AtomicInteger(0);
+		final int nbPhotos = photos.size();
+		logger.debug("Processing " + nbPhotos + " photos with " + nbThreads + " threads");
+
+		// Worker threads are named after the calling thread, e.g. the date being collected
+		final String caller = Thread.currentThread().getName();
+		final AtomicInteger nbWorkers = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(nbThreads, Math.max(1, nbPhotos)), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				return new Thread(r, caller + "-" + nbWorkers.incrementAndGet());
+			}
+		});
+		List<Future<T>> futures = new ArrayList<Future<T>>(nbPhotos);
+		for (final PhotoItem photo : photos) {
+			futures.add(executor.submit(new Callable<T>() {
+				public T call() {
+					T result = task.process(photo);
+
+					// Trace activity every 10 photos
+					int nb = nbProcessed.incrementAndGet();
+					if (nb % 10 == 0)
+						logger.info("Processed " + nb + "/" + nbPhotos + " photos.");
+					else
+						logger.debug("Processed " + nb + "/" + nbPhotos + " photos.");
+					return result;
+				}
+			}));
+		}
+		executor.shutdown();
+
+		// Gather the results in the order of submission
+		List<T> results = new ArrayList<T>(nbPhotos);
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				results.add(futures.get(i).get());
+			} catch (ExecutionException e) {
+				logger.error("Error while processing photo " + photos.get(i).getPhotoId(), e.getCause());
+				results.add(null);
+			} catch (InterruptedException e) {
+				logger.warn("Unepected interruption: " + e.toString());
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+				while (results.size() < nbPhotos)
+					results.add(null);
+				break;
+			}
+		}
+		return results;
+	}
+}
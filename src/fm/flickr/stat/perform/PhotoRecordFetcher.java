@@ -0,0 +1,160 @@
+package fm.flickr.stat.perform;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import fm.flickr.api.wrapper.service.FlickrService;
+import fm.flickr.api.wrapper.service.param.PhotoItem;
+import fm.flickr.api.wrapper.service.param.PhotoItemsSet;
+import fm.flickr.stat.param.PhotoRecord;
+
+/**
+ * Single fetch stage of the data collection: each photo is requested once, and the resulting
+ * {@link PhotoRecord} is handed to all the statistics classes (GroupStat, TagStat, ActivityStat).
+ *
+ * Only the requests needed by the statistics asked for are run:
+ * <ul>
+ * <li>groups: flickr.photos.getAllContexts</li>
+ * <li>tags: flickr.photos.getInfo (it returns the tags of the photo)</li>
+ * <li>activity: all of the above plus flickr.photos.getFavorites and the owner's info</li>
+ * </ul>
+ *
+ * @author fmichel
+ */
+public class PhotoRecordFetcher
+{
+	private static Logger logger = Logger.getLogger(PhotoRecordFetcher.class.getName());
+
+	private static FlickrService service = new FlickrService();
+
+	/**
+	 * Retrieve the data about each photo, concurrently.
+	 *
+	 * @param photos photos retrieved from Interestingness or from a file
+	 * @param withGroups true to retrieve the groups of each photo
+	 * @param withTags true to retrieve the tags of each photo
+	 * @param withActivity true to retrieve all the data needed by ActivityStat
+	 * @return one record per photo, in the order of the photos set. Duplicate photo ids are skipped.
+	 */
+	public static List<PhotoRecord> fetch(PhotoItemsSet photos, boolean withGroups, boolean withTags, boolean withActivity) {
+		return fetch(photos, withGroups, withTags, withActivity, null);
+	}
+
+	/**
+	 * Retrieve the data about each photo, concurrently, and keep track of the photos completed in a journal.
+	 * Photos already present in the journal, from a previous interrupted run, are not requested again.
+	 *
+	 * @param photos photos retrieved from Interestingness or from a file
+	 * @param withGroups true to retrieve the groups of each photo
+	 * @param withTags true to retrieve the tags of each photo
+	 * @param withActivity true to retrieve all the data needed by ActivityStat
+	 * @param journal journal of the photos completed, null if not used
+	 * @return one record per photo, in the order of the photos set. Duplicate photo ids are skipped.
+	 */
+	public static List<PhotoRecord> fetch(PhotoItemsSet photos, final boolean withGroups, final boolean withTags, final boolean withActivity, final PhotoRecordJournal journal) {
+
+		// Remove duplicate photos. This case is unexpected when the photos are taken from Interestingess,
+		// but it may occur when their ids are read from a file.
+		ArrayList<PhotoItem> photosList = new ArrayList<PhotoItem>();
+		HashSet<String> photoIds = new HashSet<String>();
+		for (PhotoItem photo : photos.getPhotosList()) {
+			if (photoIds.add(photo.getPhotoId()))
+				photosList.add(photo);
+			else
+				logger.warn("######## Photo " + photo.getPhotoId() + " has already been treated. Skipping it.");
+		}
+
+		// Get the photos already completed by a previous run
+		Map<String, PhotoRecord> journaled = new HashMap<String, PhotoRecord>();
+		if (journal != null) {
+			try {
+				journaled = journal.open();
+			} catch (IOException e) {
+				logger.warn("Cannot open journal, going on without it: " + e.toString());
+			}
+		}
+		ArrayList<PhotoItem> toFetch = new ArrayList<PhotoItem>();
+		for (PhotoItem photo : photosList)
+			if (!journaled.containsKey(photo.getPhotoId()))
+				toFetch.add(photo);
+		if (journaled.size() > 0)
+			logger.info("Skipping " + (photosList.size() - toFetch.size()) + " photos already in the journal");
+
+		List<PhotoRecord> fetched = new PhotoCollector<PhotoRecord>().collect(toFetch, new PhotoCollector.PhotoTask<PhotoRecord>() {
+			public PhotoRecord process(PhotoItem photo) {
+				PhotoRecord record = fetchPhoto(photo, withGroups, withTags, withActivity);
+				// Photos whose requests failed are not journaled, so that a resumed run requests them again
+				if (journal != null && isComplete(record, withGroups, withTags, withActivity))
+					journal.append(record);
+				return record;
+			}
+		});
+		if (journal != null)
+			journal.close();
+
+		// Merge the records from the journal and those just fetched, in the order of the photos set.
+		// A task that failed unexpectedly still counts as a photo processed, with no data
+		List<PhotoRecord> records = new ArrayList<PhotoRecord>(photosList.size());
+		int iFetched = 0;
+		for (PhotoItem photo : photosList) {
+			PhotoRecord record = journaled.get(photo.getPhotoId());
+			if (record == null) {
+				record = fetched.get(iFetched++);
+				if (record == null)
+					record = new PhotoRecord(photo);
+			}
+			records.add(record);
+		}
+		return records;
+	}
+
+	/**
+	 * Retrieve the data about one photo
+	 *
+	 * @param photo the photo to process
+	 * @param withGroups true to retrieve the groups of the photo
+	 * @param withTags true to retrieve the tags of the photo
+	 * @param withActivity true to retrieve all the data needed by ActivityStat
+	 * @return the data collected, some fields may be null if a request failed
+	 */
+	private static PhotoRecord fetchPhoto(PhotoItem photo, boolean withGroups, boolean withTags, boolean withActivity) {
+		PhotoRecord record = new PhotoRecord(photo);
+
+		// Read photo infos inluding tags, nb of comments and notes
+		if (withTags || withActivity) {
+			logger.trace("Getting info for photo " + photo.getPhotoId());
+			record.setPhotoInfo(service.getPhotoInfo(photo.getPhotoId()));
+		}
+
+		// Read the groups of the photo
+		if (withGroups || (withActivity && record.getPhotoInfo() != null))
+			record.setGroupsSet(service.getPhotoPools(photo.getPhotoId()));
+
+		// Read the number of favs and info about the owner of the photo
+		if (withActivity && record.getPhotoInfo() != null) {
+			record.setNbFavs(service.getNbFavs(photo.getPhotoId()));
+			logger.trace("Getting info for user " + record.getPhotoInfo().getOwnerNsid());
+			record.setUserInfo(service.getUserInfo(record.getPhotoInfo().getOwnerNsid()));
+		}
+		return record;
+	}
+
+	/**
+	 * @return true if all the data asked for were retrieved, false if a request failed
+	 */
+	private static boolean isComplete(PhotoRecord record, boolean withGroups, boolean withTags, boolean withActivity) {
+		if ((withTags || withActivity) && record.getPhotoInfo() == null)
+			return false;
+		if ((withGroups || withActivity) && record.getGroupsSet() == null)
+			return false;
+		if (withActivity && (record.getNbFavs() == null || record.getUserInfo() == null))
+			return false;
+		return true;
+	}
+}
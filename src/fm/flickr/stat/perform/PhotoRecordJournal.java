@@ -0,0 +1,174 @@
+package fm.flickr.stat.perform;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+
+import org.apache.log4j.Logger;
+
+import fm.flickr.stat.param.PhotoRecord;
+
+/**
+ * Append-only journal of the photo records completed during the collection of one day. Each record is appended
+ * as soon as the data of the photo has been fetched, so that if the collection is interrupted, a restart can
+ * skip the photos already in the journal and still produce the complete results of the day.
+ * <p>
+ * File format: a header (magic number, description of the data collected), then one entry per photo record:
+ * the length of the record as an int followed by the serialized record. An incomplete last entry, typically
+ * written when the process was killed, is ignored and overwritten.
+ * </p>
+ * The journal must be deleted once the results of the day have been saved.
+ *
+ * @author fmichel
+ */
+public class PhotoRecordJournal
+{
+	private static Logger logger = Logger.getLogger(PhotoRecordJournal.class.getName());
+
+	private static final int MAGIC = 0x464A524E; // "FJRN"
+
+	private File file;
+
+	/** Description of the data collected in the records, the journal is discarded if it does not match */
+	private String content;
+
+	private DataOutputStream out = null;
+
+	/**
+	 * @param file journal file
+	 * @param content description of the data collected in the records, e.g. the list of statistics enabled.
+	 *            Records from a previous run with a different content are discarded.
+	 */
+	public PhotoRecordJournal(File file, String content) {
+		this.file = file;
+		this.content = content;
+	}
+
+	/**
+	 * Read the records of the journal, then open it to append new records.
+	 *
+	 * @return records found in the journal by photo id, in the order they were written, possibly empty
+	 * @throws IOException if the journal cannot be opened for writing
+	 */
+	public LinkedHashMap<String, PhotoRecord> open() throws IOException {
+		LinkedHashMap<String, PhotoRecord> records = new LinkedHashMap<String, PhotoRecord>();
+		long validLength = 0;
+
+		if (file.exists()) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC || !content.equals(in.readUTF()))
+					logger.warn("Journal " + file.getName() + " was written with different settings, discarding it");
+				else {
+					validLength = getHeader().length;
+					while (true) {
+						int length = in.readInt();
+						if (length < 0 || length > file.length() - validLength - 4)
+							break; // incomplete or corrupted entry
+						byte[] bytes = new byte[length];
+						in.readFully(bytes);
+						PhotoRecord record = (PhotoRecord) new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+						records.put(record.getPhotoId(), record);
+						validLength += 4 + length;
+					}
+				}
+			} catch (EOFException e) {
+				// End of the journal, possibly in the middle of an incomplete entry
+			} catch (IOException e) {
+				logger.warn("Invalid record in journal " + file.getName() + ": " + e.toString());
+			} catch (ClassNotFoundException e) {
+				logger.warn("Invalid record in journal " + file.getName() + ": " + e.toString());
+			} finally {
+				in.close();
+			}
+		}
+
+		if (validLength == 0) {
+			// New journal
+			records.clear();
+			out = new DataOutputStream(new FileOutputStream(file));
+			out.write(getHeader());
+			out.flush();
+		} else {
+			// Drop any incomplete entry at the end, then append
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.setLength(validLength);
+			} finally {
+				raf.close();
+			}
+			out = new DataOutputStream(new FileOutputStream(file, true));
+			logger.info("Resuming from journal " + file.getName() + ": " + records.size() + " photos already processed");
+		}
+		return records;
+	}
+
+	/**
+	 * @return header of the journal file: magic number and content description
+	 */
+	private byte[] getHeader() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeInt(MAGIC);
+		header.writeUTF(content);
+		header.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Append a record to the journal and flush it to the file. This method may be called by concurrent threads.
+	 * Nothing is done if the journal could not be opened.
+	 *
+	 * @param record the record of a photo completed
+	 */
+	public synchronized void append(PhotoRecord record) {
+		if (out == null)
+			return;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(record);
+			oos.close();
+
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+			out.flush();
+		} catch (IOException e) {
+			logger.warn("Cannot write photo " + record.getPhotoId() + " to journal " + file.getName() + ": " + e.toString());
+		}
+	}
+
+	/**
+	 * Close the journal file
+	 */
+	public synchronized void close() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				logger.warn("Error while closing journal " + file.getName() + ": " + e.toString());
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 * Close and delete the journal, once the results have been saved
+	 */
+	public void delete() {
+		close();
+		if (file.exists() && !file.delete())
+			logger.warn("Cannot delete journal " + file.getName());
+	}
+}
@@ -0,0 +1,117 @@
+package fm.flickr.stat.perform;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+
+import fm.util.Config;
+import fm.util.Util;
+
+/**
+ * Snapshots of the data aggregated for a period, saved in sub-directory 'snapshots' of each data directory when
+ * property 'fm.flickr.stat.snapshot' is on: monthly snapshots used by ComputeStatsMonthly, and daily summaries used
+ * by ComputeStatsTimeframe. Each snapshot carries the signature of the daily files it was computed from (names,
+ * sizes and dates of last modification): as long as these files do not change, the period is loaded from its
+ * snapshot instead of its daily files.
+ *
+ * @author fmichel
+ */
+public class Snapshots
+{
+	private static Configuration config = Config.getConfiguration();
+
+	private static final boolean ENABLED = config.getString("fm.flickr.stat.snapshot", "off").equals("on");
+
+	/** First line of the text snapshots, followed by the signature of the source files */
+	public static final String HEADER = "# Snapshot of files: ";
+
+	/**
+	 * @return true if snapshots are used, property 'fm.flickr.stat.snapshot' is on
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * @param dataDir data directory of the daily files
+	 * @param period month formatted as yyyy-mm, or day formatted as yyyy-mm-dd
+	 * @param extension file extension, starting with a dot
+	 * @return the snapshot file of the period
+	 */
+	public static File getFile(File dataDir, String period, String extension) {
+		return new File(new File(dataDir, "snapshots"), period + extension);
+	}
+
+	/**
+	 * Compute the signature of the source files of a snapshot
+	 *
+	 * @param files daily files of the period
+	 * @param parameters any other input of the aggregation, such as the sizes of slices, that must invalidate the
+	 * snapshot when it changes
+	 * @return SHA-1 digest of the names, sizes and dates of last modification of the files, and of the parameters
+	 */
+	public static String getSignature(List<File> files, String parameters) {
+		StringBuffer sources = new StringBuffer(parameters);
+		for (File file : files)
+			sources.append('\n').append(file.getName()).append(';').append(file.length()).append(';').append(file.lastModified());
+
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(sources.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuffer signature = new StringBuffer();
+			for (byte b : digest)
+				signature.append(String.format("%02x", b));
+			return signature.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform supports SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Check that a text snapshot exists and was computed from the current source files
+	 *
+	 * @param snapshot the snapshot file
+	 * @param signature signature of the current source files
+	 * @return false if snapshots are disabled, or if the snapshot is missing or out of date
+	 */
+	public static boolean isUpToDate(File snapshot, String signature) {
+		if (!ENABLED || !snapshot.exists())
+			return false;
+		try {
+			BufferedReader reader = new BufferedReader(new FileReader(snapshot));
+			try {
+				return (HEADER + signature).equals(reader.readLine());
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Create a temporary file where to write a snapshot, in the directory of the snapshot
+	 *
+	 * @param snapshot the snapshot file
+	 * @return the temporary file, to be passed to {@link #commit(File, File)} once written
+	 */
+	public static File createTempFile(File snapshot) throws IOException {
+		return File.createTempFile(snapshot.getName(), ".tmp", Util.getDir(snapshot.getAbsoluteFile().getParent()));
+	}
+
+	/**
+	 * Replace the snapshot with the temporary file, so that a snapshot is never read partially written
+	 */
+	public static void commit(File tmp, File snapshot) throws IOException {
+		Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
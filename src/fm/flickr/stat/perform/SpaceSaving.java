@@ -0,0 +1,179 @@
+package fm.flickr.stat.perform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Approximate counting of the most frequent items of a stream with a bounded number of counters, following the
+ * Space-Saving algorithm (Metwally, Agrawal and El Abbadi, 2005): when all counters are in use, the item with the
+ * lowest count is replaced by the new item, that inherits its count.
+ * <p>
+ * With m counters and a total weight N counted, the count of an item is overestimated by at most N/m, and any item
+ * whose actual count is over N/m is counted. The counters are kept in a min-heap so that each item is counted in
+ * O(log m).
+ * </p>
+ *
+ * @author fmichel
+ */
+public class SpaceSaving
+{
+	/**
+	 * Counter of one item
+	 */
+	public static class Counter
+	{
+		private String key;
+
+		private String label;
+
+		private int count;
+
+		/** Count inherited from the item replaced: the maximum overestimation of the count */
+		private int error;
+
+		/** Position in the heap */
+		private int index;
+
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return label of the item, e.g. a group name
+		 */
+		public String getLabel() {
+			return label;
+		}
+
+		/**
+		 * @return the count of the item, possibly overestimated by at most {@link #getError()}
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		public int getError() {
+			return error;
+		}
+	}
+
+	/** Min-heap of the counters, by count */
+	private Counter[] heap;
+
+	private int size = 0;
+
+	/** Counters by item key */
+	private HashMap<String, Counter> counters = new HashMap<String, Counter>();
+
+	/** Total weight counted */
+	private long total = 0;
+
+	/**
+	 * @param capacity max number of counters
+	 */
+	public SpaceSaving(int capacity) {
+		heap = new Counter[capacity];
+	}
+
+	/**
+	 * Count an item
+	 *
+	 * @param key item identifier
+	 * @param label label of the item, kept with its counter
+	 * @param weight number of occurrences to add
+	 */
+	public void add(String key, String label, int weight) {
+		total += weight;
+		Counter counter = counters.get(key);
+		if (counter == null) {
+			if (size < heap.length) {
+				counter = new Counter();
+				counter.index = size;
+				heap[size++] = counter;
+			} else {
+				// Replace the item with the lowest count
+				counter = heap[0];
+				counters.remove(counter.key);
+				counter.error = counter.count;
+			}
+			counter.key = key;
+			counter.label = label;
+			counters.put(key, counter);
+			siftUp(counter.index);
+		}
+		counter.count += weight;
+		siftDown(counter.index);
+	}
+
+	/**
+	 * @return number of items counted
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return maximum overestimation of the counts: the lowest count when all counters are in use, 0 otherwise
+	 */
+	public int getMaxError() {
+		return (size < heap.length) ? 0 : heap[0].count;
+	}
+
+	/**
+	 * @return total weight counted
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return the counters sorted by decreasing count
+	 */
+	public List<Counter> getCounters() {
+		List<Counter> result = new ArrayList<Counter>();
+		for (int i = 0; i < size; i++)
+			result.add(heap[i]);
+		Collections.sort(result, new Comparator<Counter>() {
+			public int compare(Counter c1, Counter c2) {
+				return Integer.compare(c2.count, c1.count);
+			}
+		});
+		return result;
+	}
+
+	private void siftUp(int i) {
+		Counter counter = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (heap[parent].count <= counter.count)
+				break;
+			move(heap[parent], i);
+			i = parent;
+		}
+		move(counter, i);
+	}
+
+	private void siftDown(int i) {
+		Counter counter = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && heap[child + 1].count < heap[child].count)
+				child++;
+			if (counter.count <= heap[child].count)
+				break;
+			move(heap[child], i);
+			i = child;
+		}
+		move(counter, i);
+	}
+
+	private void move(Counter counter, int i) {
+		heap[i] = counter;
+		counter.index = i;
+	}
+}
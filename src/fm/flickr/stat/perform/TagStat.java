@@ -19,16 +19,15 @@ import java.util.Vector;
 import org.apache.commons.configuration.Configuration;
 import org.apache.log4j.Logger;
 
-import fm.flickr.api.wrapper.service.FlickrService;
-import fm.flickr.api.wrapper.service.param.PhotoItem;
 import fm.flickr.api.wrapper.service.param.PhotoItemsSet;
 import fm.flickr.api.wrapper.service.param.TagItem;
 import fm.flickr.api.wrapper.service.param.TagItemsSet;
 import fm.flickr.api.wrapper.util.ServiceException;
+import fm.flickr.stat.param.PhotoRecord;
 import fm.flickr.stat.param.TagItemStat;
 import fm.flickr.stat.param.TagsPerPhoto;
 import fm.util.Config;
-import fm.util.Util;
+import fm.util.ReportOutput;
 
 /**
  * Collect the number of tag of explored photos.
@@ -46,9 +45,14 @@ public class TagStat
 
 	private static Configuration config = Config.getConfiguration();
 
-	private static FlickrService service = new FlickrService();
+	/** Number of tags kept in the daily summaries used by ComputeStatsTimeframe, 0 to load the complete daily files */
+	private static final int SUMMARY_TOPK = config.getInt("fm.flickr.stat.summary.topk", 0);
 
-	private static HashMap<String, TagItemStat> statistics = new HashMap<String, TagItemStat>();
+	/** Ids and names of the tags loaded into statistics, each tag is denoted by its index in the dictionary */
+	private static IdDictionary dictionary = new IdDictionary();
+
+	/** Number of occurences of the tags loaded. The key is the index of the tag in the dictionary */
+	private static IntCounts statistics = new IntCounts();
 
 	/** Stats of number of tags a photo has */
 	private static List<TagsPerPhoto> statisticsTpP = new ArrayList<TagsPerPhoto>();
@@ -64,6 +68,20 @@ public class TagStat
 	 * @throws IOException in case the file can't be saved
 	 */
 	public static void collecAdditionalData(String date, PhotoItemsSet photos) throws IOException {
+		collecAdditionalData(date, PhotoRecordFetcher.fetch(photos, false, true, false));
+	}
+
+	/**
+	 * <p>Count the number of occurences of each tag in the tags of photos collected beforehand by 
+	 * the {@link PhotoRecordFetcher}. Tags are those returned with the photo info.</p>
+	 * <p>A maximum of 'fm.flickr.stat.tag.maxtags' tags will be stored.</p>
+	 * <p>The results are saved to a file.</p>
+	 * 
+	 * @param date date of photos from Interestingness, given in format "YYY-MM-DD"
+	 * @param records data collected about each photo
+	 * @throws IOException in case the file can't be saved
+	 */
+	public static void collecAdditionalData(String date, List<PhotoRecord> records) throws IOException {
 
 		HashMap<String, TagItemStat> stats = new HashMap<String, TagItemStat>();
 
@@ -73,11 +91,11 @@ public class TagStat
 		Vector<Integer> listNumTags = new Vector<Integer>(); // list of number of tags of each photos (to compute the dtd deviation)
 
 		// Loop on all photos retrieved at once from Interstingness
-		for (PhotoItem photo : photos.getPhotosList()) {
+		for (PhotoRecord record : records) {
 			nbPhotosProcessed++;
 
 			// Get all tags of the photo
-			TagItemsSet tagSet = service.getPhotoTags(photo.getPhotoId());
+			TagItemsSet tagSet = record.getTagsSet();
 
 			// For each tag check if it is already in the list, add it if it is not
 			if (tagSet != null) {
@@ -108,15 +126,6 @@ public class TagStat
 				if (nbPhotosProcessed % 10 == 0)
 					logger.info("Processed " + nbPhotosProcessed + " photos, registered " + stats.size() + " tags.");
 			}
-
-			// Sleep between each photo... just not to be overloading
-			try {
-				Thread.sleep(config.getInt("fm.flickr.stat.sleepms"));
-			} catch (InterruptedException e) {
-				logger.warn("Unepected interruption: " + e.toString());
-				e.printStackTrace();
-			}
-
 		}
 
 		logger.info("### Processed " + stats.size() + " tags from " + nbPhotosProcessed + " photos");
@@ -150,7 +159,7 @@ public class TagStat
 	 */
 	private static void saveTagsFromInterestingPhotos(String date, HashMap<String, TagItemStat> stats, int nbPhotosProcessed, int sumTags, int maxTags, float stdDeviation) throws IOException {
 
-		File file = new File(Util.getDir(config.getString("fm.flickr.stat.tag.dir")), date + ".log");
+		File file = DailyFiles.newFile(config.getString("fm.flickr.stat.tag.dir"), date, ".log");
 		FileOutputStream fos = new FileOutputStream(file);
 		PrintWriter writer = new PrintWriter(fos);
 
@@ -184,8 +193,11 @@ public class TagStat
 	 */
 	public static void loadFileByDay(String date) throws ServiceException {
 
-		String fileName = config.getString("fm.flickr.stat.tag.dir") + date + ".log";
-		loadFile(new File(fileName));
+		File file = DailyFiles.findFile(config.getString("fm.flickr.stat.tag.dir"), date, ".log");
+		if (Snapshots.isEnabled() && SUMMARY_TOPK > 0)
+			merge(getDailySummary(file, date, dictionary));
+		else
+			merge(loadFile(file, dictionary));
 		logger.info("### " + statistics.size() + " total tags loaded.");
 	}
 
@@ -197,6 +209,7 @@ public class TagStat
 	public static void loadFilesByMonth(String yearMonth) throws ServiceException {
 		// Empty the current data if any
 		statistics.clear();
+		dictionary.clear();
 		statisticsTpP.clear();
 
 		File dir = new File(config.getString("fm.flickr.stat.tag.dir"));
@@ -206,22 +219,41 @@ public class TagStat
 			throw new ServiceException(errMsg);
 		}
 
-		for (File file : dir.listFiles())
-			if (file.getName().startsWith(yearMonth))
-				loadFile(file);
+		// Load the month from its snapshot if the daily files have not changed since it was saved
+		List<File> files = DailyFiles.listFiles(dir, yearMonth);
+		File snapshot = Snapshots.getFile(dir, yearMonth, ".log");
+		String signature = Snapshots.getSignature(files, "");
+		if (Snapshots.isUpToDate(snapshot, signature)) {
+			merge(loadFile(snapshot, dictionary));
+			logger.info("### " + statistics.size() + " total tags loaded for period " + yearMonth + " from snapshot");
+			return;
+		}
+
+		// Parse the files concurrently, then merge them in chronological order
+		List<DailyTags> days = ParallelFileLoader.parse(files, new ParallelFileLoader.FileParser<DailyTags>() {
+			public DailyTags parse(File file) throws ServiceException {
+				return loadFile(file, dictionary);
+			}
+		});
+		for (DailyTags day : days)
+			merge(day);
+		if (Snapshots.isEnabled() && !files.isEmpty())
+			saveSnapshot(snapshot, signature, statisticsTpP, statistics, dictionary);
 
 		logger.info("### " + statistics.size() + " total tags loaded for period " + yearMonth);
 	}
 
 	/** 
-	 * Parse the content of the given file and store its content into the static map statistics
+	 * Parse the content of the given file
 	 * @param file  
+	 * @param dictionary dictionary where to add the tags of the file
 	 */
-	private static void loadFile(File file) throws ServiceException {
+	private static DailyTags loadFile(File file, IdDictionary dictionary) throws ServiceException {
+		DailyTags day = new DailyTags();
 		try {
 			if (!file.exists()) {
 				logger.warn("No file: " + file.getAbsolutePath());
-				return;
+				return day;
 			}
 
 			FileInputStream fis = new FileInputStream(file);
@@ -251,7 +283,7 @@ public class TagStat
 						if (str.startsWith(strSeeked))
 							gpp.setStdDevTagsPerPhoto(Float.valueOf(str.substring(strSeeked.length())));
 
-						statisticsTpP.add(gpp);
+						day.tagsPerPhoto.add(gpp);
 					}
 
 				} else {
@@ -259,25 +291,14 @@ public class TagStat
 					if (tokens.length != 3)
 						logger.warn("Wrong format on line: " + str);
 					else {
-						String tagId = tokens[0];
-
-						TagItemStat tagStat = statistics.get(tagId);
-						if (tagStat != null) {
-							// Either increment the number of occurences if the tag already exists
-							tagStat.incNbOccurences(Integer.valueOf(tokens[2]));
-							logger.trace("Updating tag " + tagId + ": " + tagStat.getNbOccurences());
-
-						} else {
-							// Or create a new tag element
-							TagItemStat tag = new TagItemStat(tokens[0], tokens[1], Integer.valueOf(tokens[2]));
-							logger.trace("Adding tag " + tagId);
-							statistics.put(tagId, tag);
-						}
+						// Either add a new tag or increment the number of occurences if the tag already exists
+						day.tags.add(dictionary.getIndex(tokens[0], tokens[1]), Integer.valueOf(tokens[2]));
 					}
 				}
 				str = buffer.readLine();
 			}
 			fis.close();
+			return day;
 
 		} catch (IOException e) {
 			String errMsg = "Error when reading file " + file.getName() + ". Exception: " + e.toString();
@@ -286,6 +307,95 @@ public class TagStat
 		}
 	}
 
+	/**
+	 * Merge the data of one day into the static maps statistics and statisticsTpP
+	 * 
+	 * @param day data loaded from the file of one day
+	 */
+	private static void merge(DailyTags day) {
+		statisticsTpP.addAll(day.tagsPerPhoto);
+		statistics.addAll(day.tags);
+	}
+
+	/**
+	 * Save the summary of the given date, if daily summaries are used, so that it is ready for ComputeStatsTimeframe
+	 * 
+	 * @param date date formatted as yyyy-mm-dd
+	 */
+	public static void saveDailySummary(String date) {
+		if (Snapshots.isEnabled() && SUMMARY_TOPK > 0) {
+			try {
+				getDailySummary(DailyFiles.findFile(config.getString("fm.flickr.stat.tag.dir"), date, ".log"), date, new IdDictionary());
+			} catch (ServiceException e) {
+				logger.warn("Cannot save the summary of " + date + ". Exception: " + e.toString());
+			}
+		}
+	}
+
+	/**
+	 * Return the summary of one day: the figures of the day and its 'fm.flickr.stat.summary.topk' most frequent tags.
+	 * The summary is read from its snapshot if it is up to date, otherwise it is computed from the daily file and saved.
+	 * 
+	 * @param file daily file
+	 * @param date date of the file, formatted as yyyy-mm-dd
+	 * @param dictionary dictionary where to add the tags of the summary
+	 */
+	private static DailyTags getDailySummary(File file, String date, IdDictionary dictionary) throws ServiceException {
+		File summary = Snapshots.getFile(new File(config.getString("fm.flickr.stat.tag.dir")), date, ".log");
+		String signature = Snapshots.getSignature(Collections.singletonList(file), "topk=" + SUMMARY_TOPK);
+		if (Snapshots.isUpToDate(summary, signature))
+			return loadFile(summary, dictionary);
+
+		DailyTags day = loadFile(file, dictionary);
+		day.tags.keepTop(SUMMARY_TOPK);
+		if (file.exists())
+			saveSnapshot(summary, signature, day.tagsPerPhoto, day.tags, dictionary);
+		return day;
+	}
+
+	/**
+	 * Save tags into a snapshot, in the format of the daily files: the figures of each day followed by the
+	 * occurrences of each tag over the period
+	 * 
+	 * @param snapshot the snapshot file
+	 * @param signature signature of the daily files of the period
+	 * @param tagsPerPhoto figures of each day
+	 * @param tags occurrences of the tags of the period
+	 * @param dictionary dictionary of the tags
+	 */
+	private static void saveSnapshot(File snapshot, String signature, List<TagsPerPhoto> tagsPerPhoto, IntCounts tags, IdDictionary dictionary) {
+		try {
+			File tmp = Snapshots.createTempFile(snapshot);
+			PrintWriter writer = new PrintWriter(new FileOutputStream(tmp));
+			writer.println(Snapshots.HEADER + signature);
+			for (TagsPerPhoto gpp : tagsPerPhoto) {
+				writer.println("# Average number of tags per photo: " + gpp.getAvgTagsPerPhoto());
+				writer.println("# Maximum number of tags per photo: " + gpp.getMaxTagsPerPhoto());
+				writer.println("# Standard deviation of the number of tags per photo: " + gpp.getStdDevTagsPerPhoto());
+			}
+			for (int tag : tags.getKeys())
+				writer.println(dictionary.getKey(tag) + TagItemStat.FIELD_SEPARATOR + dictionary.getName(tag) + TagItemStat.FIELD_SEPARATOR + tags.get(tag));
+			writer.close();
+			if (writer.checkError())
+				throw new IOException("error when writing file " + tmp.getPath());
+			Snapshots.commit(tmp, snapshot);
+		} catch (IOException e) {
+			logger.warn("Cannot save snapshot " + snapshot.getPath() + ". Exception: " + e.toString());
+		}
+	}
+
+	/**
+	 * Data loaded from the file of one day
+	 */
+	private static class DailyTags
+	{
+		/** Number of occurences of the tags of the day. The key is the index of the tag in the dictionary it was loaded with */
+		IntCounts tags = new IntCounts();
+
+		/** Stats of number of tags per photo */
+		List<TagsPerPhoto> tagsPerPhoto = new ArrayList<TagsPerPhoto>();
+	}
+
 	/**
 	 * Print the header line following the csv format
 	 * @param ps
@@ -301,15 +411,13 @@ public class TagStat
 	 */
 	public static void displayTagsByPopularity(PrintStream ps) {
 		logger.info("Computing statistincs of tags");
-		Collection<TagItemStat> tagset = statistics.values();
-		ArrayList<TagItemStat> tagList = new ArrayList<TagItemStat>(tagset);
-		Collections.sort(tagList);
-
-		for (int i = 0; i < tagList.size(); i++) {
-			TagItemStat entry = tagList.get(i);
+		int[] tags = statistics.getKeysByCount();
+		for (int i = 0; i < tags.length; i++) {
+			int nbOccurences = statistics.get(tags[i]);
 
 			// Filter only tags with a minimum number of occurences
-			if (entry.getNbOccurences() >= config.getInt("fm.flickr.stat.tag.minoccurence")) {
+			if (nbOccurences >= config.getInt("fm.flickr.stat.tag.minoccurence")) {
+				TagItemStat entry = new TagItemStat(dictionary.getKey(tags[i]), dictionary.getName(tags[i]), nbOccurences);
 				ps.println((i + 1) + ": " + entry.toStringL());
 			}
 		}
@@ -336,8 +444,8 @@ public class TagStat
 		}
 
 		ps.print(month + "; ");
-		ps.printf("%2.4f; ", sumAvg / statisticsTpP.size());
-		ps.printf("%2.4f; ", sumStdDev / statisticsTpP.size());
+		ps.print(ReportOutput.format4(sumAvg / statisticsTpP.size()) + "; ");
+		ps.print(ReportOutput.format4(sumStdDev / statisticsTpP.size()) + "; ");
 		ps.println(sumMax / statisticsTpP.size());
 	}
 }
@@ -11,9 +11,15 @@ import java.io.PrintWriter;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.log4j.Logger;
@@ -21,7 +27,6 @@ import org.apache.log4j.Logger;
 import fm.flickr.api.wrapper.service.FlickrService;
 import fm.flickr.api.wrapper.util.ServiceException;
 import fm.util.Config;
-import fm.util.Util;
 
 /**
  * This class retrieves the total number of photos uploaded every day, hour by hour to Flickr. 
@@ -45,6 +50,15 @@ public class UploadsStat
 
 	private static final int MAX_ATTEMPTS = 12;
 
+	/** Delay before asking again an hour for which the API answered 0, per attempt already done */
+	private static final long ZERO_RETRY_DELAY_MS = 2000;
+
+	/** Max delay before asking again an hour for which the API answered 0 */
+	private static final long ZERO_RETRY_MAX_DELAY_MS = 10000;
+
+	/** Number of hours of a day requested concurrently */
+	private static final int NB_THREADS = Math.max(1, config.getInt("fm.flickr.stat.uploads.nbthreads", 1));
+
 	/** Number of elements per line in the data file: 24 hours + the daily total = 25 */
 	private static final int ELTS_PER_LINE = 25;
 
@@ -66,6 +80,11 @@ public class UploadsStat
 	 */
 	public void collecUploads(String date) throws IOException {
 
+		// Local distribution, so that several dates can be collected concurrently
+		Vector<Long> distribution = new Vector<Long>();
+		for (int i = 0; i < ELTS_PER_LINE; i++)
+			distribution.add(Long.valueOf(0));
+
 		GregorianCalendar cal = new GregorianCalendar();
 		SimpleDateFormat sdfDate = new SimpleDateFormat("yyyy-MM-dd");
 		SimpleDateFormat sdfDateTime = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
@@ -79,40 +98,64 @@ public class UploadsStat
 			cal.set(Calendar.SECOND, 0);
 			cal.set(Calendar.HOUR_OF_DAY, 0);
 
-			// Retrieve the number of uploads hour by hour (at local time = CET for me)
-			long total = 0;
+			// Retrieve the number of uploads of each hour (at local time = CET for me), NB_THREADS hours at once
+			final long[] uploads = new long[ELTS_PER_LINE - 1];
+			final CountDownLatch pending = new CountDownLatch(ELTS_PER_LINE - 1);
+			final String caller = Thread.currentThread().getName();
+			final AtomicInteger nbWorkers = new AtomicInteger(0);
+			final ScheduledExecutorService executor = Executors.newScheduledThreadPool(NB_THREADS, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					return new Thread(r, caller + "-" + nbWorkers.incrementAndGet());
+				}
+			});
 			for (int i = 0; i < ELTS_PER_LINE - 1; i++) {
-				Date minDate = cal.getTime();
+				final int hour = i;
+				final String minDate = sdfDateTime.format(cal.getTime());
 				cal.add(GregorianCalendar.HOUR_OF_DAY, 1);
-				Date maxDate = cal.getTime();
-
-				long nb = 0;
-				int attempts = 0;
-				while (attempts < MAX_ATTEMPTS) {
-					logger.debug("Getting number of uploads at " + i + " hours");
-					nb = service.getTotalUploads(sdfDateTime.format(minDate), sdfDateTime.format(maxDate));
-					// For an unknown reason, the API sometimes returns 0 the first call, then a real value...
-					// So let's try several times if it happens
-					if (nb != 0)
-						break;
-					else {
-						attempts++;
-						if (attempts >= MAX_ATTEMPTS) {
-							logger.warn("Could not get value other than 0 after " + MAX_ATTEMPTS + " attempts");
-							break;
-						}
-						try { // Sleep a few seconds before retrying (increasing with the number of attempts)
-							Thread.sleep(attempts * 2000);
-						} catch (InterruptedException e) {
-							logger.warn("Unepected interruption: " + e.toString());
-							e.printStackTrace();
+				final String maxDate = sdfDateTime.format(cal.getTime());
+
+				executor.execute(new Runnable() {
+					private int attempts = 0;
+
+					public void run() {
+						long nb = -1;
+						try {
+							logger.debug("Getting number of uploads at " + hour + " hours");
+							nb = service.getTotalUploads(minDate, maxDate);
+							// For an unknown reason, the API sometimes returns 0 the first call, then a real value...
+							// So let's try several times if it happens, a few seconds later (increasing with the number
+							// of attempts, up to 10 seconds) while the other hours go on
+							if (nb == 0) {
+								attempts++;
+								if (attempts < MAX_ATTEMPTS) {
+									executor.schedule(this, Math.min(ZERO_RETRY_MAX_DELAY_MS, attempts * ZERO_RETRY_DELAY_MS), TimeUnit.MILLISECONDS);
+									return;
+								}
+								logger.warn("Could not get value other than 0 after " + MAX_ATTEMPTS + " attempts");
+							}
+						} catch (RuntimeException e) {
+							logger.error("Error while getting number of uploads at " + hour + " hours", e);
 						}
+						uploads[hour] = nb;
+						pending.countDown();
 					}
-				}
+				});
+			}
+			try {
+				pending.await();
+			} catch (InterruptedException e) {
+				logger.warn("Unepected interruption: " + e.toString());
+				Thread.currentThread().interrupt();
+				executor.shutdownNow();
+				return;
+			}
+			executor.shutdown();
 
-				if (nb != -1) { // Ignore in case an error occurred in service.getTotalUploads()
-					distribution.set(i, nb);
-					total += nb; // calculate the daily total					
+			long total = 0;
+			for (int i = 0; i < ELTS_PER_LINE - 1; i++) {
+				if (uploads[i] != -1) { // Ignore in case an error occurred in service.getTotalUploads()
+					distribution.set(i, uploads[i]);
+					total += uploads[i]; // calculate the daily total					
 
 					// Add the daily total
 					distribution.set(ELTS_PER_LINE - 1, total);
@@ -136,7 +179,7 @@ public class UploadsStat
 	 */
 	private static void saveDailyData(String date, Vector<Long> distribution) throws IOException {
 
-		File file = new File(Util.getDir(config.getString("fm.flickr.stat.uploads.dir")), date + ".csv");
+		File file = DailyFiles.newFile(config.getString("fm.flickr.stat.uploads.dir"), date, ".csv");
 		FileOutputStream fos = new FileOutputStream(file);
 		PrintWriter writer = new PrintWriter(fos);
 
@@ -160,8 +203,7 @@ public class UploadsStat
 	 * @param date given in format "YYYY-MM-DD"
 	 */
 	public static void loadFileByDay(String date) throws ServiceException {
-		String fileName = config.getString("fm.flickr.stat.uploads.dir") + date + ".csv";
-		loadFile(new File(fileName));
+		merge(loadFile(DailyFiles.findFile(config.getString("fm.flickr.stat.uploads.dir"), date, ".csv")));
 	}
 
 	/**
@@ -182,21 +224,58 @@ public class UploadsStat
 			throw new ServiceException(errMsg);
 		}
 
-		for (File file : dir.listFiles())
-			if (file.getName().startsWith(yearMonth))
-				loadFile(file);
+		// Load the month from its snapshot if the daily files have not changed since it was saved
+		List<File> files = DailyFiles.listFiles(dir, yearMonth);
+		File snapshot = Snapshots.getFile(dir, yearMonth, ".csv");
+		String signature = Snapshots.getSignature(files, "");
+		if (Snapshots.isUpToDate(snapshot, signature)) {
+			merge(loadFile(snapshot));
+			return;
+		}
+
+		// Parse the files concurrently, then add them up
+		List<long[]> days = ParallelFileLoader.parse(files, new ParallelFileLoader.FileParser<long[]>() {
+			public long[] parse(File file) throws ServiceException {
+				return loadFile(file);
+			}
+		});
+		for (long[] day : days)
+			merge(day);
+
+		// The snapshot has the format of a daily file, with the sums of the month
+		if (Snapshots.isEnabled() && !files.isEmpty()) {
+			try {
+				File tmp = Snapshots.createTempFile(snapshot);
+				PrintWriter writer = new PrintWriter(new FileOutputStream(tmp));
+				writer.println(Snapshots.HEADER + signature);
+				for (int i = 0; i < ELTS_PER_LINE; i++) {
+					writer.print(distribution.get(i));
+					if (i < ELTS_PER_LINE - 1)
+						writer.print("; ");
+				}
+				writer.println();
+				writer.close();
+				if (writer.checkError())
+					throw new IOException("error when writing file " + tmp.getPath());
+				Snapshots.commit(tmp, snapshot);
+			} catch (IOException e) {
+				logger.warn("Cannot save snapshot " + snapshot.getPath() + ". Exception: " + e.toString());
+			}
+		}
 	}
 
 	/**
-	 * Load the content of the given file and store its content into the distribution vector
+	 * Load the content of the given file
 	 * 
 	 * @param file file instance denoting the daily file to load
+	 * @return the sum of the lines of the file: number of uploads by hour, then daily total
 	 */
-	private static void loadFile(File file) throws ServiceException {
+	private static long[] loadFile(File file) throws ServiceException {
+		long[] day = new long[ELTS_PER_LINE];
 		try {
 			if (!file.exists()) {
 				logger.warn("No file: " + file.getAbsolutePath());
-				return;
+				return day;
 			}
 
 			FileInputStream fis = new FileInputStream(file);
@@ -211,12 +290,13 @@ public class UploadsStat
 						logger.warn("Wrong format on line: " + str);
 					else {
 						for (int i = 0; i < ELTS_PER_LINE; i++)
-							distribution.set(i, distribution.get(i) + Long.valueOf(tokens[i].trim()));
+							day[i] += Long.valueOf(tokens[i].trim());
 					}
 				}
 				str = buffer.readLine();
 			}
 			fis.close();
+			return day;
 
 		} catch (IOException e) {
 			String errMsg = "Error when reading file " + file.getName() + ". Exception: " + e.toString();
@@ -225,6 +305,14 @@ public class UploadsStat
 		}
 	}
 
+	/**
+	 * Add the data of one day to the distribution vector
+	 */
+	private static void merge(long[] day) {
+		for (int i = 0; i < ELTS_PER_LINE; i++)
+			distribution.set(i, distribution.get(i) + day[i]);
+	}
+
 	/**
 	 * Init the header line for the distribution of number of uploads of hour of the day 
 	 * @param ps where to print the output
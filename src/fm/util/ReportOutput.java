@@ -0,0 +1,94 @@
+package fm.util;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Output of the statistics reports: buffered result files, and fast formatting of the ratios they contain.
+ * 
+ * @author fmichel
+ */
+public class ReportOutput
+{
+	private static final int BUFFER_SIZE = 65536;
+
+	/** Values up to which format4() does not need String.format: rounding errors remain far below 1e-6 */
+	private static final double MAX_FAST_VALUE = 1e5;
+
+	/**
+	 * Decimal symbols of a locale
+	 */
+	private static class Symbols
+	{
+		Locale locale;
+
+		char decimalSeparator;
+
+		/** False if the locale does not write digits 0-9 */
+		boolean asciiDigits;
+	}
+
+	/** Symbols of the locale used by the last call to format4() */
+	private static volatile Symbols symbols = null;
+
+	/**
+	 * Open a result file with a buffer: the file must be closed at the end for its content to be written completely.
+	 * 
+	 * @param fileName name of the file, created or truncated
+	 * @throws FileNotFoundException if the file cannot be created
+	 */
+	public static PrintStream open(String fileName) throws FileNotFoundException {
+		return new PrintStream(new BufferedOutputStream(new FileOutputStream(fileName), BUFFER_SIZE));
+	}
+
+	/**
+	 * Format a number with 4 decimals, exactly as String.format("%2.4f", value) does in the default locale, but
+	 * without parsing a format and creating a Formatter each time. Values that cannot be formatted exactly this way
+	 * (negative, large, NaN, close to a rounding tie, or locales with other digits than 0-9) are formatted by
+	 * String.format.
+	 * 
+	 * @param value the number to format
+	 */
+	public static String format4(double value) {
+		Symbols current = getSymbols();
+		if (!(value >= 0 && value < MAX_FAST_VALUE) || Double.doubleToRawLongBits(value) < 0 || !current.asciiDigits)
+			return String.format("%2.4f", value);
+
+		// Formatter rounds half up the decimal representation of the value: leave ties to it
+		double scaled = value * 10000;
+		double fraction = scaled - Math.floor(scaled);
+		if (Math.abs(fraction - 0.5) < 1e-6)
+			return String.format("%2.4f", value);
+
+		long rounded = Math.round(scaled);
+		int decimals = (int) (rounded % 10000);
+		StringBuilder sb = new StringBuilder(16);
+		sb.append(rounded / 10000).append(current.decimalSeparator);
+		if (decimals < 1000)
+			sb.append('0');
+		if (decimals < 100)
+			sb.append('0');
+		if (decimals < 10)
+			sb.append('0');
+		sb.append(decimals);
+		return sb.toString();
+	}
+
+	private static Symbols getSymbols() {
+		Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+		Symbols current = symbols;
+		if (current == null || !current.locale.equals(locale)) {
+			DecimalFormatSymbols dfs = DecimalFormatSymbols.getInstance(locale);
+			current = new Symbols();
+			current.locale = locale;
+			current.decimalSeparator = dfs.getDecimalSeparator();
+			current.asciiDigits = (dfs.getZeroDigit() == '0');
+			symbols = current;
+		}
+		return current;
+	}
+}